@@ -0,0 +1,176 @@
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.partition.PartitionService;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes many entries into a map with a few {@code putAll} calls instead of
+ * one {@code put} per entry.
+ * <p>
+ * The entries are buffered per member owning their partition. When a
+ * member's buffer reaches {@code batchSize} entries it is written with
+ * {@code IMap.putAll}, which sends the entries of each partition in one
+ * operation, on one of {@code maxInFlight} threads, so the members are written
+ * concurrently. If {@code maxInFlight} batches are being written,
+ * {@link #put(Object, Object)} waits for one of them to finish, which bounds
+ * the memory held by the buffers. Partitions migrating in the meantime only
+ * make a batch span more than one member; {@code putAll} still routes every
+ * entry to its current owner.
+ * <p>
+ * A writer is used by one thread. Call {@link #flush()} or {@link #close()}
+ * to write the remaining entries; the first failed batch is rethrown by the
+ * next call.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BulkMapWriter<K, V> implements Closeable {
+
+    private static final AtomicInteger WRITER_COUNT = new AtomicInteger();
+
+    private final IMap<K, V> map;
+    private final PartitionService partitionService;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ExecutorService writers;
+    private final Map<Member, Map<K, V>> buffers = new HashMap<Member, Map<K, V>>();
+    private final AtomicLong writtenEntries = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final long startNanos = System.nanoTime();
+
+    public BulkMapWriter(HazelcastInstance hazelcastInstance, IMap<K, V> map, int batchSize, int maxInFlight) {
+        if (batchSize < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("batchSize and maxInFlight must be positive");
+        }
+        this.map = map;
+        this.partitionService = hazelcastInstance.getPartitionService();
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        final int writer = WRITER_COUNT.incrementAndGet();
+        this.writers = Executors.newFixedThreadPool(maxInFlight, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                        "bulk-map-writer-" + writer + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Buffers the entry and writes the buffer of its owner if it is full.
+     * Of several puts of one key before the buffer is written, the last wins.
+     */
+    public void put(K key, V value) {
+        checkFailure();
+        Member owner = partitionService.getPartition(key).getOwner();
+        Map<K, V> buffer = buffers.get(owner);
+        if (buffer == null) {
+            buffer = new HashMap<K, V>();
+            buffers.put(owner, buffer);
+        }
+        buffer.put(key, value);
+        if (buffer.size() >= batchSize) {
+            buffers.remove(owner);
+            submit(buffer);
+        }
+    }
+
+    /**
+     * Writes all buffered entries and waits until every batch is written.
+     */
+    public void flush() {
+        for (Map<K, V> buffer : buffers.values()) {
+            submit(buffer);
+        }
+        buffers.clear();
+        // all permits are free once the last batch has been written
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+        checkFailure();
+    }
+
+    /**
+     * Flushes the writer and stops its threads.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            writers.shutdown();
+        }
+    }
+
+    public long getWrittenEntries() {
+        return writtenEntries.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return the entries written per second since the writer was created
+     */
+    public double getEntriesPerSecond() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return elapsedNanos == 0 ? 0 : writtenEntries.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d entries in %,d batches, %,.0f entries/s", getWrittenEntries(), getBatches(),
+                getEntriesPerSecond());
+    }
+
+    private void submit(final Map<K, V> batch) {
+        inFlight.acquireUninterruptibly();
+        try {
+            writers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (failure.get() == null) {
+                            map.putAll(batch);
+                            writtenEntries.addAndGet(batch.size());
+                            batches.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void checkFailure() {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new RuntimeException("Writing a batch failed after " + getWrittenEntries() + " entries", t);
+        }
+    }
+}
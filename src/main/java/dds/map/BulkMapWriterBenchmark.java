@@ -0,0 +1,54 @@
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills a map on a cluster of three members, once with one {@code put} per
+ * entry and once with a {@link BulkMapWriter}, and prints the entries per
+ * second. The number of entries written by the {@link BulkMapWriter} is the
+ * first argument, 10,000,000 by default; give the JVM a few GB of heap for
+ * that. The {@code put} loop writes a tenth of it.
+ */
+public class BulkMapWriterBenchmark {
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        HazelcastInstance hz = Hazelcast.newHazelcastInstance();
+        Hazelcast.newHazelcastInstance();
+        Hazelcast.newHazelcastInstance();
+        try {
+            IMap<Integer, Integer> putMap = hz.getMap("put");
+            long start = System.nanoTime();
+            for (int i = 0; i < entries / 10; i++) {
+                putMap.put(i, i);
+            }
+            report("put loop", entries / 10, start);
+            putMap.destroy();
+
+            IMap<Integer, Integer> bulkMap = hz.getMap("bulk");
+            start = System.nanoTime();
+            //tag::bulkmapwriter[]
+            // batches of 1000 entries per member, at most 8 batches in flight
+            BulkMapWriter<Integer, Integer> writer = new BulkMapWriter<Integer, Integer>(hz, bulkMap, 1000, 8);
+            try {
+                for (int i = 0; i < entries; i++) {
+                    writer.put(i, i);
+                }
+            } finally {
+                writer.close();
+            }
+            //end::bulkmapwriter[]
+            report("bulk writer (" + writer.getBatches() + " batches)", bulkMap.size(), start);
+        } finally {
+            Hazelcast.shutdownAll();
+        }
+    }
+
+    private static void report(String name, int entries, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.printf("%-32s: %,11d entries in %,7d ms, %,10.0f entries/s%n", name, entries,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), entries / (elapsedNanos / 1e9));
+    }
+}
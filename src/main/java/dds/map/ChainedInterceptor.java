@@ -0,0 +1,60 @@
+import java.io.Serializable;
+
+/**
+ * An interceptor of an {@link InterceptorChain}, which declares the
+ * operations it intercepts so that the chain calls it for those only.
+ * Override the methods of the declared operations; as with
+ * {@code MapInterceptor}, returning {@code null} from an intercepting method
+ * leaves the value as it is.
+ */
+public abstract class ChainedInterceptor implements Serializable {
+
+    public static final int GET = 0;
+    public static final int AFTER_GET = 1;
+    public static final int PUT = 2;
+    public static final int AFTER_PUT = 3;
+    public static final int REMOVE = 4;
+    public static final int AFTER_REMOVE = 5;
+    static final int OPERATION_COUNT = 6;
+
+    private final int operationMask;
+
+    /**
+     * @param operations the operations to intercept, e.g. {@code GET, AFTER_PUT}
+     */
+    protected ChainedInterceptor(int... operations) {
+        int mask = 0;
+        for (int operation : operations) {
+            if (operation < 0 || operation >= OPERATION_COUNT) {
+                throw new IllegalArgumentException("Unknown operation " + operation);
+            }
+            mask |= 1 << operation;
+        }
+        this.operationMask = mask;
+    }
+
+    final int getOperationMask() {
+        return operationMask;
+    }
+
+    public Object interceptGet(Object value) {
+        return null;
+    }
+
+    public void afterGet(Object value) {
+    }
+
+    public Object interceptPut(Object oldValue, Object newValue) {
+        return null;
+    }
+
+    public void afterPut(Object value) {
+    }
+
+    public Object interceptRemove(Object removedValue) {
+        return null;
+    }
+
+    public void afterRemove(Object value) {
+    }
+}
@@ -0,0 +1,202 @@
+import com.hazelcast.config.Config;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the map update strategies of {@link RacyUpdateMember},
+ * {@link OptimisticMember}, {@link PessimisticUpdateMember},
+ * {@link VersionedMap} and {@code IncrementingEntryProcessor} against each
+ * other: threads spread over the members increment integer counters, on a
+ * single hot key and on 1000 uniformly chosen keys. Reports the throughput,
+ * the latency percentiles of an increment, the retries of the optimistic
+ * strategies and the lost updates, i.e. the increments which were counted by
+ * the threads but are missing from the map.
+ * <p>
+ * The arguments are the number of members, threads and seconds per run,
+ * 2, 8 and 5 by default.
+ */
+public class ContentionBenchmark {
+
+    private static final int UNIFORM_KEYS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int memberCount = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        Config config = new Config();
+        config.getMapConfig("versioned-*").setInMemoryFormat(InMemoryFormat.OBJECT);
+        HazelcastInstance[] members = new HazelcastInstance[memberCount];
+        for (int i = 0; i < memberCount; i++) {
+            members[i] = Hazelcast.newHazelcastInstance(config);
+        }
+        System.out.printf("%d members, %d threads, %d s per run%n", memberCount, threadCount, seconds);
+        System.out.printf("%-18s %-8s %10s %8s %8s %8s %8s %10s %8s%n", "strategy", "keys", "updates/s",
+                "p50 us", "p99 us", "p99.9 us", "max us", "retries", "lost");
+        try {
+            for (int keys : new int[]{1, UNIFORM_KEYS}) {
+                for (Strategy strategy : strategies()) {
+                    run(strategy, members, keys, threadCount, seconds);
+                }
+            }
+        } finally {
+            Hazelcast.shutdownAll();
+        }
+    }
+
+    private static List<Strategy> strategies() {
+        List<Strategy> strategies = new ArrayList<Strategy>();
+        strategies.add(new Strategy("racy get/put") {
+            @Override
+            int increment(int thread, int key) {
+                IMap<Integer, Integer> map = maps[thread];
+                map.put(key, map.get(key) + 1);
+                return 0;
+            }
+        });
+        strategies.add(new Strategy("lock") {
+            @Override
+            int increment(int thread, int key) {
+                IMap<Integer, Integer> map = maps[thread];
+                map.lock(key);
+                try {
+                    map.put(key, map.get(key) + 1);
+                } finally {
+                    map.unlock(key);
+                }
+                return 0;
+            }
+        });
+        strategies.add(new Strategy("replace") {
+            @Override
+            int increment(int thread, int key) {
+                IMap<Integer, Integer> map = maps[thread];
+                for (int retries = 0; ; retries++) {
+                    Integer oldValue = map.get(key);
+                    if (map.replace(key, oldValue, oldValue + 1)) {
+                        return retries;
+                    }
+                }
+            }
+        });
+        strategies.add(new Strategy("versioned") {
+            private final VersionedMap.Updater<Integer> increment = new VersionedMap.Updater<Integer>() {
+                @Override
+                public Integer apply(Integer current) {
+                    return current + 1;
+                }
+            };
+
+            @Override
+            int increment(int thread, int key) {
+                VersionedMap<Integer, Integer> map = versionedMaps[thread];
+                long failed = map.getFailedAttempts();
+                map.update(key, increment);
+                return (int) (map.getFailedAttempts() - failed);
+            }
+        });
+        strategies.add(new Strategy("entry processor") {
+            @Override
+            int increment(int thread, int key) {
+                maps[thread].executeOnKey(key, new IncrementingEntryProcessor());
+                return 0;
+            }
+        });
+        return strategies;
+    }
+
+    private static void run(final Strategy strategy, HazelcastInstance[] members, final int keys, int threadCount,
+                            long seconds) throws InterruptedException {
+        strategy.setUp(members, threadCount, keys);
+        final LatencyHistogram[] histograms = new LatencyHistogram[threadCount];
+        final long[] retries = new long[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        DeadlineThreads.run(threadCount, seconds, new DeadlineThreads.Task() {
+            @Override
+            public void run(int thread, long iteration) {
+                // each thread steps through the keys with its own stride
+                int key = (int) ((thread + iteration * (1 + thread)) % keys);
+                long start = System.nanoTime();
+                retries[thread] += strategy.increment(thread, key);
+                histograms[thread].record(System.nanoTime() - start);
+            }
+        });
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        long totalRetries = 0;
+        for (int i = 0; i < threadCount; i++) {
+            histogram.add(histograms[i]);
+            totalRetries += retries[i];
+        }
+        long lost = histogram.getCount() - strategy.sum(keys);
+        System.out.printf("%-18s %-8s %,10.0f %8d %8d %8d %8d %,10d %,8d%n", strategy.name,
+                keys == 1 ? "hot" : "uniform", histogram.getCount() / (double) seconds,
+                micros(histogram.getPercentile(50)), micros(histogram.getPercentile(99)),
+                micros(histogram.getPercentile(99.9)), micros(histogram.getMax()), totalRetries, lost);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * An update strategy, given the map of each thread to increment the
+     * counters through, on the members in turn.
+     */
+    private abstract static class Strategy {
+
+        final String name;
+        IMap<Integer, Integer>[] maps;
+        VersionedMap<Integer, Integer>[] versionedMaps;
+
+        Strategy(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Creates a fresh map with zero counters for the next run.
+         */
+        @SuppressWarnings("unchecked")
+        void setUp(HazelcastInstance[] members, int threadCount, int keys) {
+            String mapName = name.replace(' ', '-').replace('/', '-') + "-" + keys;
+            maps = new IMap[threadCount];
+            versionedMaps = new VersionedMap[threadCount];
+            for (int i = 0; i < threadCount; i++) {
+                HazelcastInstance member = members[i % members.length];
+                maps[i] = member.getMap(mapName);
+                versionedMaps[i] = new VersionedMap<Integer, Integer>(
+                        member.<Integer, VersionedValue<Integer>>getMap("versioned-" + mapName));
+            }
+            for (int key = 0; key < keys; key++) {
+                maps[0].put(key, 0);
+                versionedMaps[0].put(key, 0);
+            }
+        }
+
+        /**
+         * @return the sum of the counters
+         */
+        long sum(int keys) {
+            long sum = 0;
+            for (int key = 0; key < keys; key++) {
+                sum += maps[0].get(key) + versionedMaps[0].getWithVersion(key).getValue();
+            }
+            return sum;
+        }
+
+        /**
+         * Increments the counter of the key through the map of the thread.
+         *
+         * @return the number of retries
+         */
+        abstract int increment(int thread, int key);
+    }
+}
@@ -0,0 +1,81 @@
+import com.hazelcast.core.EntryView;
+import com.hazelcast.map.eviction.MapEvictionPolicy;
+
+/**
+ * Scores an entry by the cost of losing it per byte it takes: the entries
+ * which are rarely hit, have not been accessed for long, are cheap to load
+ * again and take much memory are evicted first.
+ * <p>
+ * The score of an entry is
+ * {@code (hits + 1) * reloadCost / cost / (1 + idle / halfLife)}, where
+ * {@code cost} is the memory cost of the entry, {@code idle} the time since
+ * its last access and {@code reloadCost} is given by a {@link ReloadCost},
+ * e.g. the latency of the query that loads the entry.
+ * <p>
+ * Configure it per map with {@code MapConfig.setMapEvictionPolicy}; the map
+ * compares the entries of its sample pairwise and evicts one per eviction.
+ */
+public class CostAwareEvictionPolicy extends MapEvictionPolicy {
+
+    /**
+     * The relative cost of loading an entry again after it has been evicted.
+     */
+    public interface ReloadCost {
+        double of(Object key);
+    }
+
+    private static final ReloadCost UNIFORM = new ReloadCost() {
+        @Override
+        public double of(Object key) {
+            return 1;
+        }
+    };
+
+    private final ReloadCost reloadCost;
+    private final double halfLifeMillis;
+    private final Clock clock;
+
+    public CostAwareEvictionPolicy(long halfLifeMillis) {
+        this(UNIFORM, halfLifeMillis);
+    }
+
+    public CostAwareEvictionPolicy(ReloadCost reloadCost, long halfLifeMillis) {
+        this(reloadCost, halfLifeMillis, Clock.SYSTEM);
+    }
+
+    CostAwareEvictionPolicy(ReloadCost reloadCost, long halfLifeMillis, Clock clock) {
+        this.reloadCost = reloadCost;
+        this.halfLifeMillis = halfLifeMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    public int compare(EntryView entryView1, EntryView entryView2) {
+        long now = clock.millis();
+        return Double.compare(score(entryView1, now), score(entryView2, now));
+    }
+
+    /**
+     * @return the score of the entry at the given time; the lower the score,
+     * the sooner the entry is evicted
+     */
+    double score(EntryView entry, long now) {
+        double idle = Math.max(0, now - entry.getLastAccessTime());
+        double cost = Math.max(1, entry.getCost());
+        return (entry.getHits() + 1) * reloadCost.of(entry.getKey()) / cost / (1 + idle / halfLifeMillis);
+    }
+
+    /**
+     * The time source, which the simulation of {@link EvictionBenchmark} replaces.
+     */
+    interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long millis() {
+                return System.currentTimeMillis();
+            }
+        };
+
+        long millis();
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a task in a loop on several threads until a deadline, as the
+ * benchmarks of the map update strategies do.
+ */
+public final class DeadlineThreads {
+
+    /**
+     * One iteration of a thread.
+     */
+    public interface Task {
+        /**
+         * @param thread    the number of the thread, from 0
+         * @param iteration the number of the iteration on this thread, from 0
+         */
+        void run(int thread, long iteration);
+    }
+
+    private DeadlineThreads() {
+    }
+
+    /**
+     * Starts the threads, which call the task until the given number of
+     * seconds has passed, and waits for them to finish.
+     *
+     * @return the number of iterations of all threads
+     */
+    public static long run(int threads, long seconds, final Task task) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final AtomicLong iterations = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long iteration = 0;
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            task.run(thread, iteration);
+                            iteration++;
+                        }
+                    } finally {
+                        iterations.addAndGet(iteration);
+                        done.countDown();
+                    }
+                }
+            }, "deadline-thread-" + i).start();
+        }
+        done.await();
+        return iterations.get();
+    }
+}
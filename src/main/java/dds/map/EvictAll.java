@@ -3,7 +3,7 @@ import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.map.IMap;
 
 public class EvictAll {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         //tag::evictall[]
         final int numberOfKeysToLock = 4;
         final int numberOfEntriesToAdd = 1000;
@@ -27,5 +27,20 @@ public class EvictAll {
         System.out.printf("# Expected map size\t: %d\n", numberOfKeysToLock);
         System.out.printf("# Actual map size\t: %d\n", map.size());
         //end::evictall[]
+
+        for (int i = 0; i < numberOfEntriesToAdd; i++) {
+            map.put(i, i);
+        }
+
+        //tag::incrementalevictall[]
+        // slices of at most 500 microseconds with 100 microsecond pauses between them, 4 partitions at a time
+        EvictionProgress progress = new IncrementalEvictAll<Integer, Integer>(node1, map, 500, 100, 4).start();
+        long evicted = progress.get();
+
+        System.out.printf("# After incremental evictAll: evicted %d, map size %d\n", evicted, map.size());
+        System.out.printf("# %s\n", progress);
+        //end::incrementalevictall[]
+
+        Hazelcast.shutdownAll();
     }
 }
\ No newline at end of file
@@ -0,0 +1,337 @@
+import com.hazelcast.core.EntryView;
+import com.hazelcast.map.eviction.MapEvictionPolicy;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates a map of a fixed capacity, 10 million entries by default or the
+ * first argument, under a skewed workload of keys with different sizes and
+ * reload costs. Compares the hit ratio, the reload cost of the misses and
+ * the CPU time of eviction of sampling eviction with a pairwise
+ * {@link MapEvictionPolicy}, as {@code IMap} does, with scoring the whole
+ * sample at once and evicting several entries per sample. {@code IMap} only
+ * ever compares pairwise, so the batch scoring exists only in this
+ * simulation. Run with {@code -Xmx2g}.
+ */
+public class EvictionBenchmark {
+
+    public static void main(String[] args) {
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int universe = capacity * 4;
+        long requests = capacity * 3L;
+        System.out.printf("capacity %,d entries, %,d keys, %,d requests%n", capacity, universe, requests);
+
+        SimulatedMap map = new SimulatedMap(capacity);
+        CostAwareEvictionPolicy costAware = new CostAwareEvictionPolicy(SimulatedMap.RELOAD_COST, capacity, map);
+        run("LRU comparator, sample 15", map, new LruPolicy(), false, 15, 1, universe, requests);
+        run("cost-aware comparator, sample 15", map, costAware, false, 15, 1, universe, requests);
+        run("cost-aware batch, sample 15, evict 1", map, costAware, true, 15, 1, universe, requests);
+        run("cost-aware batch, sample 64, evict 16", map, costAware, true, 64, 16, universe, requests);
+    }
+
+    private static void run(String name, SimulatedMap map, MapEvictionPolicy policy, boolean batch,
+                            int sampleSize, int victimsPerEviction, int universe, long requests) {
+        map.clear();
+        Random random = new Random(42);
+        SlotView[] sample = new SlotView[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            sample[i] = new SlotView(map);
+        }
+        double[] scores = new double[sampleSize];
+        int[] victims = new int[sampleSize];
+        long hits = 0;
+        long missCost = 0;
+        long evicted = 0;
+        long evictionNanos = 0;
+        long start = System.nanoTime();
+        for (long request = 0; request < requests; request++) {
+            // cubing a uniform number makes the low keys much hotter than the high ones
+            double r = random.nextDouble();
+            int key = (int) (universe * r * r * r);
+            map.now = request;
+            if (map.hit(key)) {
+                hits++;
+                continue;
+            }
+            missCost += SimulatedMap.reloadCost(key);
+            if (map.size == map.capacity) {
+                long evictionStart = System.nanoTime();
+                for (int i = 0; i < sampleSize; i++) {
+                    sample[i].slot = random.nextInt(map.size);
+                }
+                if (batch) {
+                    int count = selectVictims((CostAwareEvictionPolicy) policy, map.millis(), sample, sampleSize,
+                            victimsPerEviction, scores, victims);
+                    // remove the highest slots first, as removing moves the last slot into the gap
+                    int[] slots = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        slots[i] = sample[victims[i]].slot;
+                    }
+                    Arrays.sort(slots);
+                    int last = -1;
+                    for (int i = count - 1; i >= 0; i--) {
+                        if (slots[i] != last) {
+                            map.remove(slots[i]);
+                            evicted++;
+                            last = slots[i];
+                        }
+                    }
+                } else {
+                    int worst = 0;
+                    for (int i = 1; i < sampleSize; i++) {
+                        if (policy.compare(sample[i], sample[worst]) < 0) {
+                            worst = i;
+                        }
+                    }
+                    map.remove(sample[worst].slot);
+                    evicted++;
+                }
+                evictionNanos += System.nanoTime() - evictionStart;
+            }
+            map.put(key);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-38s: hit ratio %.4f, miss cost %,d, eviction %,5.0f ns/evicted entry, "
+                        + "%,.0f ms eviction of %,.0f ms total%n", name, hits / (double) requests, missCost,
+                evictionNanos / (double) Math.max(1, evicted), evictionNanos / 1e6,
+                TimeUnit.NANOSECONDS.toMillis(elapsed) / 1d);
+    }
+
+    /**
+     * Scores the sample once, reading the clock once, and writes the indexes
+     * of its {@code k} entries with the lowest scores into {@code victims}.
+     *
+     * @return the number of victims, at most {@code k}
+     */
+    private static int selectVictims(CostAwareEvictionPolicy policy, long now, EntryView[] sample, int size, int k,
+                                     double[] scores, int[] victims) {
+        for (int i = 0; i < size; i++) {
+            scores[i] = policy.score(sample[i], now);
+        }
+        int count = Math.min(k, size);
+        // partial selection sort, as k is small compared to the sample
+        for (int i = 0; i < size; i++) {
+            victims[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            int min = i;
+            for (int j = i + 1; j < size; j++) {
+                if (scores[victims[j]] < scores[victims[min]]) {
+                    min = j;
+                }
+            }
+            int swap = victims[i];
+            victims[i] = victims[min];
+            victims[min] = swap;
+        }
+        return count;
+    }
+
+    /**
+     * Least recently used first, as the {@code LRU} eviction policy of {@code IMap}.
+     */
+    private static class LruPolicy extends MapEvictionPolicy {
+        @Override
+        public int compare(EntryView entryView1, EntryView entryView2) {
+            return Long.compare(entryView1.getLastAccessTime(), entryView2.getLastAccessTime());
+        }
+    }
+
+    /**
+     * The entries of the simulated map in dense arrays, with an open-addressing
+     * index from key to slot. The request number serves as the clock.
+     */
+    private static final class SimulatedMap implements CostAwareEvictionPolicy.Clock {
+
+        static final CostAwareEvictionPolicy.ReloadCost RELOAD_COST = new CostAwareEvictionPolicy.ReloadCost() {
+            @Override
+            public double of(Object key) {
+                return reloadCost((Integer) key);
+            }
+        };
+
+        final int capacity;
+        final int[] keys;
+        final int[] hits;
+        final long[] lastAccess;
+        final int[] index;
+        int size;
+        long now;
+
+        SimulatedMap(int capacity) {
+            this.capacity = capacity;
+            this.keys = new int[capacity];
+            this.hits = new int[capacity];
+            this.lastAccess = new long[capacity];
+            this.index = new int[Integer.highestOneBit(capacity) * 4];
+        }
+
+        /**
+         * @return the size of the entry in bytes, between 100 and 10,000
+         */
+        static int sizeOf(int key) {
+            return 100 + (mix(key) & Integer.MAX_VALUE) % 9901;
+        }
+
+        /**
+         * @return the cost of loading the entry again, between 1 and 100
+         */
+        static int reloadCost(int key) {
+            return 1 + (mix(key) >>> 8) % 100;
+        }
+
+        @Override
+        public long millis() {
+            return now;
+        }
+
+        void clear() {
+            Arrays.fill(index, -1);
+            size = 0;
+        }
+
+        boolean hit(int key) {
+            int slot = slotOf(key);
+            if (slot < 0) {
+                return false;
+            }
+            hits[slot]++;
+            lastAccess[slot] = now;
+            return true;
+        }
+
+        void put(int key) {
+            int slot = size++;
+            keys[slot] = key;
+            hits[slot] = 0;
+            lastAccess[slot] = now;
+            int mask = index.length - 1;
+            int i = mix(key) & mask;
+            while (index[i] != -1) {
+                i = (i + 1) & mask;
+            }
+            index[i] = slot;
+        }
+
+        void remove(int slot) {
+            removeFromIndex(keys[slot]);
+            int last = --size;
+            if (slot != last) {
+                // keep the slots dense so they can be sampled uniformly
+                int position = positionOf(keys[last]);
+                keys[slot] = keys[last];
+                hits[slot] = hits[last];
+                lastAccess[slot] = lastAccess[last];
+                index[position] = slot;
+            }
+        }
+
+        private int slotOf(int key) {
+            int position = positionOf(key);
+            return position < 0 ? -1 : index[position];
+        }
+
+        private int positionOf(int key) {
+            int mask = index.length - 1;
+            for (int i = mix(key) & mask; index[i] != -1; i = (i + 1) & mask) {
+                if (keys[index[i]] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void removeFromIndex(int key) {
+            int mask = index.length - 1;
+            int free = positionOf(key);
+            for (int next = (free + 1) & mask; index[next] != -1; next = (next + 1) & mask) {
+                int home = mix(keys[index[next]]) & mask;
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    index[free] = index[next];
+                    free = next;
+                }
+            }
+            index[free] = -1;
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 15);
+        }
+    }
+
+    /**
+     * An {@link EntryView} of a slot of the simulated map, reused for every sample.
+     */
+    private static final class SlotView implements EntryView<Integer, Object> {
+
+        private final SimulatedMap map;
+        int slot;
+
+        SlotView(SimulatedMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public Integer getKey() {
+            return map.keys[slot];
+        }
+
+        @Override
+        public Object getValue() {
+            return null;
+        }
+
+        @Override
+        public long getCost() {
+            return SimulatedMap.sizeOf(map.keys[slot]);
+        }
+
+        @Override
+        public long getCreationTime() {
+            return 0;
+        }
+
+        @Override
+        public long getExpirationTime() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public long getHits() {
+            return map.hits[slot];
+        }
+
+        @Override
+        public long getLastAccessTime() {
+            return map.lastAccess[slot];
+        }
+
+        @Override
+        public long getLastStoredTime() {
+            return 0;
+        }
+
+        @Override
+        public long getLastUpdateTime() {
+            return 0;
+        }
+
+        @Override
+        public long getVersion() {
+            return 0;
+        }
+
+        @Override
+        public long getTtl() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public long getMaxIdle() {
+            return Long.MAX_VALUE;
+        }
+    }
+}
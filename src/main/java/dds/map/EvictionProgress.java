@@ -0,0 +1,159 @@
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The progress of an {@link IncrementalEvictAll} run, safe to read from any
+ * thread while the eviction is running. As a {@link Future}, it gives the
+ * number of evicted entries; cancelling it stops the eviction after the
+ * current slice, and {@code get()} throws {@code CancellationException} right
+ * away instead of waiting for it.
+ */
+public class EvictionProgress implements Future<Long> {
+
+    private final int partitionCount;
+    private final AtomicInteger completedPartitions = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile boolean cancelled;
+    // guarded by this
+    private long evictedKeys;
+    private long skippedKeys;
+    private long[] sliceNanos = new long[64];
+    private int sliceCount;
+
+    EvictionProgress(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    synchronized void recordSlice(long nanos, int evicted, int skipped) {
+        evictedKeys += evicted;
+        skippedKeys += skipped;
+        if (sliceCount == sliceNanos.length) {
+            sliceNanos = Arrays.copyOf(sliceNanos, sliceCount * 2);
+        }
+        sliceNanos[sliceCount++] = nanos;
+    }
+
+    void partitionCompleted() {
+        completedPartitions.incrementAndGet();
+    }
+
+    void fail(Throwable t) {
+        failure.compareAndSet(null, t);
+    }
+
+    void finish() {
+        done.countDown();
+    }
+
+    /**
+     * @return {@code true} if the workers should stop, as the eviction was
+     * cancelled or one of them failed
+     */
+    boolean isStopped() {
+        return cancelled || failure.get() != null;
+    }
+
+    @Override
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) {
+            return false;
+        }
+        cancelled = true;
+        // wakes up the callers of get(), the workers stop after their current slice
+        done.countDown();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Waits until the eviction has finished.
+     *
+     * @return the number of evicted entries
+     */
+    @Override
+    public Long get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public Long get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("Eviction has not finished after " + getEvictedKeys() + " keys");
+        }
+        return result();
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public int getCompletedPartitions() {
+        return completedPartitions.get();
+    }
+
+    public synchronized long getEvictedKeys() {
+        return evictedKeys;
+    }
+
+    /**
+     * @return the number of keys which were locked or already gone
+     */
+    public synchronized long getSkippedKeys() {
+        return skippedKeys;
+    }
+
+    public synchronized int getSliceCount() {
+        return sliceCount;
+    }
+
+    /**
+     * @return the duration of each slice so far, in nanoseconds
+     */
+    public synchronized long[] getSliceNanos() {
+        return Arrays.copyOf(sliceNanos, sliceCount);
+    }
+
+    public synchronized long getMaxSliceNanos() {
+        long max = 0;
+        for (int i = 0; i < sliceCount; i++) {
+            max = Math.max(max, sliceNanos[i]);
+        }
+        return max;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("EvictionProgress{partitions=%d/%d, evicted=%d, skipped=%d, slices=%d, "
+                        + "maxSliceMicros=%d}", completedPartitions.get(), partitionCount, evictedKeys, skippedKeys,
+                sliceCount, TimeUnit.NANOSECONDS.toMicros(getMaxSliceNanos()));
+    }
+
+    private Long result() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException("Eviction was cancelled after " + getEvictedKeys() + " keys");
+        }
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new ExecutionException("Evicting the map failed after " + getEvictedKeys() + " keys", t);
+        }
+        return getEvictedKeys();
+    }
+}
@@ -0,0 +1,131 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically deletes the rows of the {@code person} table whose
+ * {@code expiration_date} has passed, so that the table, and the volume read
+ * while warming up a map, stay proportional to the live entries.
+ * <p>
+ * Every run deletes the expired rows in batches of {@code batchSize}, each in
+ * its own short transaction, and yields between the batches so that the store
+ * operations of Hazelcast are not blocked behind one long delete. The expiration
+ * date is checked again in the delete, so a row that has been stored again with
+ * a new expiration date in the meantime is kept.
+ */
+public class ExpiredPersonPurger {
+
+    private final PersonConnectionPool pool;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong purgedRows = new AtomicLong();
+
+    public ExpiredPersonPurger(PersonConnectionPool pool, int batchSize) {
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "expired-person-purger");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void start(long interval, TimeUnit unit) {
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    purge();
+                } catch (RuntimeException e) {
+                    // keep the schedule alive, the next run retries
+                    e.printStackTrace();
+                }
+            }
+        }, interval, interval, unit);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public long getPurgedRows() {
+        return purgedRows.get();
+    }
+
+    /**
+     * Deletes all rows that are expired at the time of the call.
+     *
+     * @return the number of deleted rows
+     */
+    public int purge() {
+        long now = System.currentTimeMillis();
+        int total = 0;
+        int deleted;
+        do {
+            deleted = purgeBatch(now);
+            total += deleted;
+            Thread.yield();
+        } while (deleted > 0 && !Thread.currentThread().isInterrupted());
+        purgedRows.addAndGet(total);
+        return total;
+    }
+
+    private int purgeBatch(long now) {
+        Connection con = pool.acquire();
+        try {
+            List<Long> ids = new ArrayList<Long>(batchSize);
+            PreparedStatement select = con.prepareStatement(
+                    "select id from person where expiration_date <= ? fetch first " + batchSize + " rows only");
+            try {
+                select.setLong(1, now);
+                ResultSet resultSet = select.executeQuery();
+                try {
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getLong(1));
+                    }
+                } finally {
+                    resultSet.close();
+                }
+            } finally {
+                select.close();
+            }
+            if (ids.isEmpty()) {
+                return 0;
+            }
+
+            con.setAutoCommit(false);
+            PreparedStatement delete = con.prepareStatement(
+                    "delete from person where id = ? and expiration_date <= ?");
+            try {
+                for (Long id : ids) {
+                    delete.setLong(1, id);
+                    delete.setLong(2, now);
+                    delete.addBatch();
+                }
+                int deleted = 0;
+                for (int count : delete.executeBatch()) {
+                    deleted += Math.max(count, 0);
+                }
+                con.commit();
+                return deleted;
+            } finally {
+                delete.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.release(con);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch which estimates how often a key has been accessed
+ * recently, in 4-bit counters, so the estimate of a key is at most 15.
+ * <p>
+ * Each key increments one counter in each of four rows of the same table and
+ * its estimate is the lowest of the four counters. After
+ * {@code 10 * expectedKeys} increments all counters are halved, so the
+ * estimates follow the recent popularity of the keys instead of growing
+ * forever. The table takes about 8 bytes per expected key.
+ * <p>
+ * The sketch takes no locks, so the partition threads which record accesses
+ * and compare entries do not wait for each other: a counter is incremented
+ * with a compare-and-set of its 64-bit word, and the thread whose increment
+ * reaches the sample size halves the table word by word while the others
+ * keep reading and incrementing it. An increment which races with the
+ * halving of its word may be halved or not, which only shifts an estimate by
+ * one.
+ */
+public class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+    private final AtomicBoolean resetting = new AtomicBoolean();
+    private final AtomicLong resets = new AtomicLong();
+
+    public FrequencySketch(int expectedKeys) {
+        if (expectedKeys < 1) {
+            throw new IllegalArgumentException("expectedKeys must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(64, expectedKeys - 1) << 1);
+        this.table = new AtomicLongArray(size);
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * expectedKeys;
+    }
+
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            added |= incrementAt(indexOf(hash, row), hash, row);
+        }
+        if (added && additions.incrementAndGet() >= sampleSize && resetting.compareAndSet(false, true)) {
+            try {
+                reset();
+            } finally {
+                resetting.set(false);
+            }
+        }
+    }
+
+    /**
+     * @return the estimated number of recent accesses of the key, between 0 and 15
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int row = 0; row < SEEDS.length; row++) {
+            frequency = Math.min(frequency, counterAt(indexOf(hash, row), hash, row));
+        }
+        return frequency;
+    }
+
+    /**
+     * @return how many times the counters have been halved
+     */
+    public long getResets() {
+        return resets.get();
+    }
+
+    private boolean incrementAt(int index, int hash, int row) {
+        int shift = counterShift(hash, row);
+        long mask = 0xfL << shift;
+        for (;;) {
+            long word = table.get(index);
+            if ((word & mask) == mask) {
+                return false;
+            }
+            if (table.compareAndSet(index, word, word + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    private int counterAt(int index, int hash, int row) {
+        return (int) ((table.get(index) >>> counterShift(hash, row)) & 0xfL);
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            long word;
+            do {
+                word = table.get(i);
+            } while (!table.compareAndSet(i, word, (word >>> 1) & RESET_MASK));
+        }
+        // the additions made during the halving count towards the next one
+        additions.addAndGet(-sampleSize / 2);
+        resets.incrementAndGet();
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return (int) (h ^ (h >>> 32)) & tableMask;
+    }
+
+    private static int counterShift(int hash, int row) {
+        // each row uses a different one of the 16 counters of a word
+        return (((hash >>> (row << 3)) & 3) + (row << 2)) << 2;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
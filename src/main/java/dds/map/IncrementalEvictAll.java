@@ -0,0 +1,167 @@
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.partition.PartitionService;
+import com.hazelcast.query.Predicates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Evicts all entries of a map except the locked ones, as {@code IMap.evictAll()}
+ * does, but in small steps so that other operations on the same partitions
+ * are not held up for long.
+ * <p>
+ * {@code IMap.evictAll()} runs one operation per partition which evicts all
+ * of the partition's entries while it occupies the partition thread. This
+ * class reads the keys of one partition at a time with a partition predicate
+ * and evicts them one key at a time with {@code IMap.evict(key)}, skipping the
+ * keys which {@code IMap.tryLock(key)} finds locked. It works through each
+ * partition in slices of at most {@code sliceMicros} and pauses for
+ * {@code pauseMicros} between slices, so the operations of other callers are
+ * queued behind a single eviction at most.
+ * <p>
+ * Each key costs three operations, the lock, the eviction and the unlock, so
+ * {@code parallelism} threads work on different partitions at the same time.
+ * They hold the keys of at most {@code parallelism} partitions in memory,
+ * about {@code parallelism / partitionCount} of the map's keys, rather than
+ * all of them. Entries added to a partition after its keys were read are not
+ * evicted, and a MapStore's {@code deleteAll} is not called, as with
+ * {@code evictAll()}.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class IncrementalEvictAll<K, V> {
+
+    private final HazelcastInstance hazelcastInstance;
+    private final IMap<K, V> map;
+    private final long sliceNanos;
+    private final long pauseNanos;
+    private final int parallelism;
+
+    /**
+     * @param parallelism the number of partitions evicted at the same time
+     */
+    public IncrementalEvictAll(HazelcastInstance hazelcastInstance, IMap<K, V> map, long sliceMicros,
+                               long pauseMicros, int parallelism) {
+        if (sliceMicros < 1 || pauseMicros < 0 || parallelism < 1) {
+            throw new IllegalArgumentException("sliceMicros and parallelism must be positive "
+                    + "and pauseMicros must not be negative");
+        }
+        this.hazelcastInstance = hazelcastInstance;
+        this.map = map;
+        this.sliceNanos = TimeUnit.MICROSECONDS.toNanos(sliceMicros);
+        this.pauseNanos = TimeUnit.MICROSECONDS.toNanos(pauseMicros);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Starts evicting the partitions in the background. Await the returned
+     * progress, or ignore it to let the eviction run on its own.
+     */
+    public EvictionProgress start() {
+        final List<Object> partitionKeys = partitionKeys();
+        final EvictionProgress progress = new EvictionProgress(partitionKeys.size());
+        final AtomicInteger nextPartition = new AtomicInteger();
+        int workers = Math.min(parallelism, partitionKeys.size());
+        final AtomicInteger runningWorkers = new AtomicInteger(workers);
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int partition;
+                        while (!progress.isStopped()
+                                && (partition = nextPartition.getAndIncrement()) < partitionKeys.size()) {
+                            evictPartition(keysOf(partitionKeys.get(partition)), progress);
+                            if (progress.isStopped()) {
+                                break;
+                            }
+                            progress.partitionCompleted();
+                        }
+                    } catch (RuntimeException e) {
+                        progress.fail(e);
+                    } finally {
+                        if (runningWorkers.decrementAndGet() == 0) {
+                            progress.finish();
+                        }
+                    }
+                }
+            }, "incremental-evict-all-" + map.getName() + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        if (workers == 0) {
+            progress.finish();
+        }
+        return progress;
+    }
+
+    private void evictPartition(List<K> keys, EvictionProgress progress) {
+        int next = 0;
+        while (next < keys.size() && !progress.isStopped()) {
+            long sliceStart = System.nanoTime();
+            int evicted = 0;
+            int skipped = 0;
+            // at least one key per slice, then as many as fit into the slice
+            do {
+                if (evict(keys.get(next++))) {
+                    evicted++;
+                } else {
+                    skipped++;
+                }
+            } while (next < keys.size() && System.nanoTime() - sliceStart < sliceNanos);
+            progress.recordSlice(System.nanoTime() - sliceStart, evicted, skipped);
+            if (pauseNanos > 0) {
+                LockSupport.parkNanos(pauseNanos);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private boolean evict(K key) {
+        // IMap.evict waits for the lock of a locked key, while evictAll skips it
+        if (!map.tryLock(key)) {
+            return false;
+        }
+        try {
+            return map.evict(key);
+        } finally {
+            map.unlock(key);
+        }
+    }
+
+    /**
+     * @return the keys of the partition which the given key belongs to
+     */
+    private List<K> keysOf(Object partitionKey) {
+        return new ArrayList<K>(map.keySet(Predicates.<K, V>partitionPredicate(partitionKey,
+                Predicates.<K, V>alwaysTrue())));
+    }
+
+    /**
+     * @return a key of each partition, in the order of the partition ids
+     */
+    private List<Object> partitionKeys() {
+        PartitionService partitionService = hazelcastInstance.getPartitionService();
+        int partitionCount = partitionService.getPartitions().size();
+        Object[] keys = new Object[partitionCount];
+        int found = 0;
+        for (int candidate = 0; found < partitionCount; candidate++) {
+            int partitionId = partitionService.getPartition(candidate).getPartitionId();
+            if (keys[partitionId] == null) {
+                keys[partitionId] = candidate;
+                found++;
+            }
+        }
+        List<Object> partitionKeys = new ArrayList<Object>(partitionCount);
+        for (Object key : keys) {
+            partitionKeys.add(key);
+        }
+        return partitionKeys;
+    }
+}
@@ -0,0 +1,328 @@
+import com.hazelcast.map.MapStore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An in-memory {@link MapStore} for {@code int} keys and values, as a compact
+ * replacement of a {@code ConcurrentHashMap<Integer, Integer>} such as the one
+ * of {@code LoadAll.SimpleStore}.
+ * <p>
+ * The entries are kept in {@code segments} open-addressing hash tables with
+ * linear probing, each an {@code int} buffer holding a key and a value per
+ * slot, on the heap or, with {@code offHeap}, in a direct buffer. No object
+ * is allocated per entry. Writes lock the segment of the key, so writes to
+ * different segments run in parallel. Reads take no lock: they validate an
+ * optimistic stamp and only retry under the read lock if a write interfered.
+ * {@link #get(int, int)} and {@link #containsKey(int)} do not allocate;
+ * {@code load} only boxes the value it returns.
+ */
+public class IntIntMapStore implements MapStore<Integer, Integer> {
+
+    // marks a free slot; the key 0 itself is kept outside of the table
+    private static final int FREE = 0;
+    private static final int INITIAL_SLOTS = 16;
+    // a found value is returned as its 32 bits, which never equal MISSING
+    private static final long MISSING = -1L << 32;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final boolean offHeap;
+
+    public IntIntMapStore() {
+        this(16, false);
+    }
+
+    /**
+     * @param segments the number of lock stripes, rounded up to a power of two
+     */
+    public IntIntMapStore(int segments, boolean offHeap) {
+        int count = 1;
+        int bits = 0;
+        while (count < segments) {
+            count <<= 1;
+            bits++;
+        }
+        this.segments = new Segment[count];
+        this.segmentShift = 32 - bits;
+        this.offHeap = offHeap;
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return the value of the key, or {@code missingValue} if there is none
+     */
+    public int get(int key, int missingValue) {
+        int hash = mix(key);
+        long found = segmentOf(hash).get(key, hash);
+        return found == MISSING ? missingValue : (int) found;
+    }
+
+    public boolean containsKey(int key) {
+        int hash = mix(key);
+        return segmentOf(hash).get(key, hash) != MISSING;
+    }
+
+    public void put(int key, int value) {
+        int hash = mix(key);
+        segmentOf(hash).put(key, hash, value);
+    }
+
+    public void remove(int key) {
+        int hash = mix(key);
+        segmentOf(hash).remove(key, hash);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.size + (segment.hasZeroKey ? 1 : 0);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the bytes held by the hash tables
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                bytes += segment.table.capacity() * 4L;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void store(Integer key, Integer value) {
+        put(key, value);
+    }
+
+    @Override
+    public void storeAll(Map<Integer, Integer> map) {
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void delete(Integer key) {
+        remove(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<Integer> keys) {
+        for (Integer key : keys) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public Integer load(Integer key) {
+        int hash = mix(key);
+        long found = segmentOf(hash).get(key, hash);
+        return found == MISSING ? null : (int) found;
+    }
+
+    @Override
+    public Map<Integer, Integer> loadAll(Collection<Integer> keys) {
+        Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+        for (Integer key : keys) {
+            Integer value = load(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Iterable<Integer> loadAllKeys() {
+        List<Integer> keys = new ArrayList<Integer>(size());
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                if (segment.hasZeroKey) {
+                    keys.add(FREE);
+                }
+                IntBuffer table = segment.table;
+                for (int i = 0; i < table.capacity(); i += 2) {
+                    if (table.get(i) != FREE) {
+                        keys.add(table.get(i));
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return keys;
+    }
+
+    private Segment segmentOf(int hash) {
+        // the top bits pick the segment and the low bits the slot within it, so the
+        // two only overlap once a segment has more than 2^segmentShift slots
+        return segments[(int) ((hash & 0xFFFFFFFFL) >>> segmentShift)];
+    }
+
+    private IntBuffer allocate(int slots) {
+        if (offHeap) {
+            return ByteBuffer.allocateDirect(slots * 8).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return IntBuffer.allocate(slots * 2);
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private final class Segment {
+
+        final StampedLock lock = new StampedLock();
+        // key at 2 * slot, value at 2 * slot + 1; written under the write lock
+        IntBuffer table = allocate(INITIAL_SLOTS);
+        int size;
+        boolean hasZeroKey;
+        int zeroKeyValue;
+
+        /**
+         * @return the value in the low 32 bits, or {@link #MISSING}
+         */
+        long get(int key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            long found = find(key, hash);
+            if (lock.validate(stamp)) {
+                return found;
+            }
+            stamp = lock.readLock();
+            try {
+                return find(key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private long find(int key, int hash) {
+            if (key == FREE) {
+                return hasZeroKey ? zeroKeyValue & 0xFFFFFFFFL : MISSING;
+            }
+            IntBuffer t = table;
+            int slot = slotOf(t, key, hash);
+            return slot < 0 ? MISSING : t.get(2 * slot + 1) & 0xFFFFFFFFL;
+        }
+
+        private int slotOf(IntBuffer t, int key, int hash) {
+            int slots = t.capacity() / 2;
+            int mask = slots - 1;
+            // bounded, as a racing write may leave no free slot on the way during an optimistic read
+            for (int i = 0, slot = hash & mask; i < slots; i++, slot = (slot + 1) & mask) {
+                int k = t.get(2 * slot);
+                if (k == key) {
+                    return slot;
+                }
+                if (k == FREE) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        void put(int key, int hash, int value) {
+            long stamp = lock.writeLock();
+            try {
+                if (key == FREE) {
+                    hasZeroKey = true;
+                    zeroKeyValue = value;
+                    return;
+                }
+                int slot = slotOf(table, key, hash);
+                if (slot >= 0) {
+                    table.put(2 * slot + 1, value);
+                    return;
+                }
+                if ((size + 1) * 4 > table.capacity() / 2 * 3) {
+                    resize();
+                }
+                insert(table, key, hash, value);
+                size++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void remove(int key, int hash) {
+            long stamp = lock.writeLock();
+            try {
+                if (key == FREE) {
+                    hasZeroKey = false;
+                    return;
+                }
+                int slot = slotOf(table, key, hash);
+                if (slot < 0) {
+                    return;
+                }
+                size--;
+                // backward shift deletion: move up the following entries which
+                // would otherwise become unreachable, so no tombstones are needed
+                int mask = table.capacity() / 2 - 1;
+                int free = slot;
+                for (int next = (free + 1) & mask; ; next = (next + 1) & mask) {
+                    int k = table.get(2 * next);
+                    if (k == FREE) {
+                        break;
+                    }
+                    int home = mix(k) & mask;
+                    if (((next - home) & mask) >= ((next - free) & mask)) {
+                        table.put(2 * free, k);
+                        table.put(2 * free + 1, table.get(2 * next + 1));
+                        free = next;
+                    }
+                }
+                table.put(2 * free, FREE);
+                table.put(2 * free + 1, 0);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void resize() {
+            IntBuffer old = table;
+            IntBuffer resized = allocate(old.capacity());
+            for (int i = 0; i < old.capacity(); i += 2) {
+                int k = old.get(i);
+                if (k != FREE) {
+                    insert(resized, k, mix(k), old.get(i + 1));
+                }
+            }
+            table = resized;
+        }
+
+        private void insert(IntBuffer t, int key, int hash, int value) {
+            int mask = t.capacity() / 2 - 1;
+            int slot = hash & mask;
+            while (t.get(2 * slot) != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            t.put(2 * slot + 1, value);
+            t.put(2 * slot, key);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import com.hazelcast.map.MapStore;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@code LoadAll.SimpleStore} with {@link IntIntMapStore} on and
+ * off the heap: the memory per entry after storing a million sequential keys,
+ * the stores per second of one thread and the loads per second of several
+ * threads. {@link IntIntMapStore} is also filled with 4 million random keys,
+ * so its segments grow past 65,536 slots each. Run with a fixed heap, e.g.
+ * {@code -Xms2g -Xmx2g}.
+ */
+public class IntIntMapStoreBenchmark {
+
+    private static final int ENTRIES = 1000000;
+    private static final int RANDOM_ENTRIES = 4000000;
+    private static final int THREADS = 4;
+    private static final int LOADS_PER_THREAD = 5000000;
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            System.out.println(round == 0 ? "warm-up" : "measurement");
+            int[] sequentialKeys = new int[ENTRIES];
+            for (int i = 0; i < ENTRIES; i++) {
+                sequentialKeys[i] = i;
+            }
+            run("SimpleStore", new LoadAll.SimpleStore(), sequentialKeys);
+            run("IntIntMapStore", new IntIntMapStore(16, false), sequentialKeys);
+            run("IntIntMapStore off-heap", new IntIntMapStore(16, true), sequentialKeys);
+
+            int[] randomKeys = new int[RANDOM_ENTRIES];
+            Random random = new Random(42);
+            for (int i = 0; i < RANDOM_ENTRIES; i++) {
+                randomKeys[i] = random.nextInt();
+            }
+            run("IntIntMapStore, 4M random", new IntIntMapStore(16, false), randomKeys);
+        }
+    }
+
+    private static void run(String name, final MapStore<Integer, Integer> store, final int[] keys)
+            throws Exception {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        for (int key : keys) {
+            store.store(key, key);
+        }
+        long storeNanos = System.nanoTime() - start;
+        long heapAfter = usedHeap();
+        long offHeapBytes = 0;
+        if (name.endsWith("off-heap")) {
+            // direct buffers are not part of the heap
+            offHeapBytes = ((IntIntMapStore) store).getMemoryBytes();
+        }
+
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(thread);
+                    for (int i = 0; i < LOADS_PER_THREAD; i++) {
+                        int key = keys[random.nextInt(keys.length)];
+                        if (store.load(key) != key) {
+                            throw new IllegalStateException("wrong value for " + key);
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        long loadNanos = System.nanoTime() - start;
+
+        double bytesPerEntry = (heapAfter - heapBefore + offHeapBytes) / (double) keys.length;
+        System.out.printf("  %-26s: %5.1f bytes/entry, %,12.0f stores/sec, %,12.0f loads/sec%n", name,
+                bytesPerEntry, keys.length * perSecond(storeNanos), THREADS * LOADS_PER_THREAD * perSecond(loadNanos));
+    }
+
+    private static double perSecond(long nanos) {
+        return TimeUnit.SECONDS.toNanos(1) / (double) nanos;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
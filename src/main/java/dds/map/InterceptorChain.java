@@ -0,0 +1,203 @@
+import com.hazelcast.map.MapInterceptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A single {@link MapInterceptor} which runs a chain of
+ * {@link ChainedInterceptor}s and counts the invocations and the time of
+ * each of them.
+ * <p>
+ * Each interceptor declares the operations it intercepts, and the chain
+ * keeps a bit mask per operation of the interceptors to call: an operation
+ * no interceptor intercepts returns at once and the chain does not allocate
+ * on any call. The values of an intercepted operation are passed along the
+ * chain as {@code IMap} passes them along its interceptors, so one chain
+ * behaves like its interceptors added one by one.
+ * <p>
+ * {@code IMap} deserializes the value before it calls any interceptor, so
+ * the chain does not save the deserialization; use the {@code OBJECT}
+ * in-memory format if interceptors run on most calls. {@code addInterceptor}
+ * sends a copy of the chain to each other member, so the statistics of a
+ * chain are those of the member it runs on.
+ */
+public class InterceptorChain implements MapInterceptor {
+
+    private static final String[] OPERATION_NAMES = {
+            "get", "afterGet", "put", "afterPut", "remove", "afterRemove"};
+
+    private final String name;
+    private final ChainedInterceptor[] interceptors;
+    // bit i of interceptorMasks[operation] is set if interceptors[i] intercepts the operation
+    private final long[] interceptorMasks = new long[ChainedInterceptor.OPERATION_COUNT];
+    private final LongAdder[] invocations;
+    private final LongAdder[] nanos;
+
+    /**
+     * @param name         identifies the chain, so adding it on every member registers it once
+     * @param interceptors at most 64 interceptors, called in the given order
+     */
+    public InterceptorChain(String name, ChainedInterceptor... interceptors) {
+        if (interceptors.length > 64) {
+            throw new IllegalArgumentException("At most 64 interceptors are supported");
+        }
+        this.name = name;
+        this.interceptors = interceptors.clone();
+        this.invocations = new LongAdder[interceptors.length * ChainedInterceptor.OPERATION_COUNT];
+        this.nanos = new LongAdder[invocations.length];
+        for (int i = 0; i < invocations.length; i++) {
+            invocations[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+        }
+        for (int i = 0; i < interceptors.length; i++) {
+            for (int operation = 0; operation < ChainedInterceptor.OPERATION_COUNT; operation++) {
+                if ((interceptors[i].getOperationMask() & (1 << operation)) != 0) {
+                    interceptorMasks[operation] |= 1L << i;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Object interceptGet(Object value) {
+        long mask = interceptorMasks[ChainedInterceptor.GET];
+        if (mask == 0) {
+            return null;
+        }
+        Object result = null;
+        Object current = value;
+        for (; mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            long start = System.nanoTime();
+            Object intercepted = interceptors[i].interceptGet(current);
+            record(i, ChainedInterceptor.GET, start);
+            if (intercepted != null) {
+                result = intercepted;
+                current = intercepted;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void afterGet(Object value) {
+        for (long mask = interceptorMasks[ChainedInterceptor.AFTER_GET]; mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            long start = System.nanoTime();
+            interceptors[i].afterGet(value);
+            record(i, ChainedInterceptor.AFTER_GET, start);
+        }
+    }
+
+    @Override
+    public Object interceptPut(Object oldValue, Object newValue) {
+        long mask = interceptorMasks[ChainedInterceptor.PUT];
+        if (mask == 0) {
+            return null;
+        }
+        Object result = null;
+        Object current = newValue;
+        for (; mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            long start = System.nanoTime();
+            Object intercepted = interceptors[i].interceptPut(oldValue, current);
+            record(i, ChainedInterceptor.PUT, start);
+            if (intercepted != null) {
+                result = intercepted;
+                current = intercepted;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void afterPut(Object value) {
+        for (long mask = interceptorMasks[ChainedInterceptor.AFTER_PUT]; mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            long start = System.nanoTime();
+            interceptors[i].afterPut(value);
+            record(i, ChainedInterceptor.AFTER_PUT, start);
+        }
+    }
+
+    @Override
+    public Object interceptRemove(Object removedValue) {
+        long mask = interceptorMasks[ChainedInterceptor.REMOVE];
+        if (mask == 0) {
+            return null;
+        }
+        Object result = null;
+        Object current = removedValue;
+        for (; mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            long start = System.nanoTime();
+            Object intercepted = interceptors[i].interceptRemove(current);
+            record(i, ChainedInterceptor.REMOVE, start);
+            if (intercepted != null) {
+                result = intercepted;
+                current = intercepted;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void afterRemove(Object value) {
+        for (long mask = interceptorMasks[ChainedInterceptor.AFTER_REMOVE]; mask != 0; mask &= mask - 1) {
+            int i = Long.numberOfTrailingZeros(mask);
+            long start = System.nanoTime();
+            interceptors[i].afterRemove(value);
+            record(i, ChainedInterceptor.AFTER_REMOVE, start);
+        }
+    }
+
+    /**
+     * @return how often the interceptor at the given position was called for the operation
+     */
+    public long getInvocations(int interceptor, int operation) {
+        return invocations[interceptor * ChainedInterceptor.OPERATION_COUNT + operation].sum();
+    }
+
+    /**
+     * @return the total time the interceptor at the given position took for the operation
+     */
+    public long getTotalNanos(int interceptor, int operation) {
+        return nanos[interceptor * ChainedInterceptor.OPERATION_COUNT + operation].sum();
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof InterceptorChain && ((InterceptorChain) o).name.equals(name);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("InterceptorChain{name=").append(name);
+        for (int i = 0; i < interceptors.length; i++) {
+            sb.append(", ").append(interceptors[i].getClass().getSimpleName()).append('[');
+            String separator = "";
+            for (int operation = 0; operation < ChainedInterceptor.OPERATION_COUNT; operation++) {
+                long count = getInvocations(i, operation);
+                if (count > 0) {
+                    sb.append(separator).append(OPERATION_NAMES[operation]).append('=').append(count)
+                            .append(" calls/").append(TimeUnit.NANOSECONDS.toMicros(getTotalNanos(i, operation)))
+                            .append(" us");
+                    separator = ", ";
+                }
+            }
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+
+    private void record(int interceptor, int operation, long start) {
+        int index = interceptor * ChainedInterceptor.OPERATION_COUNT + operation;
+        nanos[index].add(System.nanoTime() - start);
+        invocations[index].increment();
+    }
+}
@@ -0,0 +1,71 @@
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InterceptorChainMember {
+
+    public static void main(String[] args) {
+        HazelcastInstance hz = Hazelcast.newHazelcastInstance();
+        try {
+            //tag::icm[]
+            IMap<String, String> map = hz.getMap("chained");
+            InterceptorChain chain = new InterceptorChain("audit-and-validate",
+                    new RejectEmptyValues(), new CountPuts(), new SuffixOnGet());
+            map.addInterceptor(chain);
+
+            for (int i = 0; i < 100000; i++) {
+                map.put("key" + (i % 100), "value" + i);
+                map.get("key" + (i % 100));
+                map.remove("key" + ((i + 50) % 100));
+            }
+            System.out.println(map.get("key99"));
+            System.out.println(chain);
+            //end::icm[]
+        } finally {
+            hz.shutdown();
+        }
+    }
+
+    private static class RejectEmptyValues extends ChainedInterceptor {
+
+        RejectEmptyValues() {
+            super(PUT);
+        }
+
+        @Override
+        public Object interceptPut(Object oldValue, Object newValue) {
+            if (newValue.toString().isEmpty()) {
+                throw new IllegalArgumentException("Empty values are not allowed");
+            }
+            return null;
+        }
+    }
+
+    private static class CountPuts extends ChainedInterceptor {
+
+        private final AtomicLong puts = new AtomicLong();
+
+        CountPuts() {
+            super(AFTER_PUT);
+        }
+
+        @Override
+        public void afterPut(Object value) {
+            puts.incrementAndGet();
+        }
+    }
+
+    private static class SuffixOnGet extends ChainedInterceptor {
+
+        SuffixOnGet() {
+            super(GET);
+        }
+
+        @Override
+        public Object interceptGet(Object value) {
+            return value == null ? null : value + "-foo";
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write throughput counters for the JDBC backed map stores.
+ */
+public class JdbcWriteStats {
+
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder rowsDeleted = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+
+    void recordWrite(int rows, long nanos) {
+        rowsWritten.add(rows);
+        batches.increment();
+        writeNanos.add(nanos);
+    }
+
+    void recordDelete(int rows, long nanos) {
+        rowsDeleted.add(rows);
+        batches.increment();
+        writeNanos.add(nanos);
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    public long getRowsDeleted() {
+        return rowsDeleted.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getWriteTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writeNanos.sum());
+    }
+
+    /**
+     * Rows written or deleted per second of time spent inside JDBC batches,
+     * summed over all connections.
+     */
+    public double getRowsPerSecond() {
+        long nanos = writeNanos.sum();
+        if (nanos == 0) {
+            return 0;
+        }
+        return (rowsWritten.sum() + rowsDeleted.sum()) * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    public void reset() {
+        rowsWritten.reset();
+        rowsDeleted.reset();
+        batches.reset();
+        writeNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "JdbcWriteStats{"
+                + "rowsWritten=" + getRowsWritten()
+                + ", rowsDeleted=" + getRowsDeleted()
+                + ", batches=" + getBatches()
+                + ", writeTimeMillis=" + getWriteTimeMillis()
+                + '}';
+    }
+}
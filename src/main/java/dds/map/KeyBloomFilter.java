@@ -0,0 +1,99 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over map keys, which answers whether a key has possibly been
+ * added or has certainly not been added. Keys are hashed by their
+ * {@code hashCode}, the same way the map hashes them, so keys with equal hash
+ * codes are indistinguishable. Adding is thread-safe and lock-free.
+ */
+public class KeyBloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Sizes the filter so that it has the given false positive probability
+     * once {@code expectedKeys} keys have been added.
+     */
+    public KeyBloomFilter(long expectedKeys, double falsePositiveProbability) {
+        if (expectedKeys < 1 || falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("expectedKeys must be positive and "
+                    + "falsePositiveProbability must be between 0 and 1");
+        }
+        long bits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = wordCount * 64L;
+        this.hashCount = Math.max(1, (int) Math.round(bitCount / (double) expectedKeys * Math.log(2)));
+    }
+
+    public void add(Object key) {
+        long hash = mix(key.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = words.get(word)) & mask) == 0
+                    && !words.compareAndSet(word, current, current | mask)) {
+                // retry
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if the key has certainly not been added
+     */
+    public boolean mightContain(Object key) {
+        long hash = mix(key.hashCode());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the false positive probability estimated from the share of set
+     * bits, which grows as keys are added
+     */
+    public double getEstimatedFalsePositiveProbability() {
+        long setBits = 0;
+        for (int i = 0; i < words.length(); i++) {
+            setBits += Long.bitCount(words.get(i));
+        }
+        return Math.pow(setBits / (double) bitCount, hashCount);
+    }
+
+    public long getMemoryBytes() {
+        return words.length() * 8L;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private long index(int combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * Spreads the 32 bits of a hash code over 64 bits (the finalizer of MurmurHash3).
+     */
+    private static long mix(int hashCode) {
+        long h = hashCode;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -13,18 +13,20 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 public class LoadAll {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
         //tag::loadall[]
         final int numberOfEntriesToAdd = 1000;
         final String mapName = LoadAll.class.getCanonicalName();
-        final Config config = createNewConfig(mapName);
+        final SimpleStore simpleStore = new SimpleStore();
+        final Config config = createNewConfig(mapName, simpleStore);
         final HazelcastInstance node = Hazelcast.newHazelcastInstance(config);
         final IMap<Integer, Integer> map = node.getMap(mapName);
 
-        populateMap(map, numberOfEntriesToAdd);
+        populateMap(node, map, numberOfEntriesToAdd);
         System.out.printf("# Map store has %d elements\n", numberOfEntriesToAdd);
 
         map.evictAll();
@@ -33,17 +35,36 @@ public class LoadAll {
         map.loadAll(true);
         System.out.printf("# After loadAll map size\t: %d\n", map.size());
         //end::loadall[]
-    }
 
-    private static void populateMap(IMap<Integer, Integer> map, int itemCount) {
-        for (int i = 0; i < itemCount; i++) {
-            map.put(i, i);
+        //tag::parallelloadall[]
+        map.evictAll();
+
+        // at most 4 chunks of 50 keys in flight, each taking one MapStore.loadAll call per partition
+        // it spans, and at most 2000 keys per second over all threads
+        ParallelMapLoader<Integer, Integer> loader = new ParallelMapLoader<Integer, Integer>(node, map, 4, 50, 2000);
+        LoadProgress progress = loader.start(simpleStore.loadAllKeys(), true);
+        while (!progress.await(100, TimeUnit.MILLISECONDS)) {
+            System.out.printf("# %s\n", progress);
         }
+        progress.await();
+        System.out.printf("# After parallel load map size\t: %d, %s\n", map.size(), progress);
+        //end::parallelloadall[]
+
+        node.shutdown();
     }
 
-    private static Config createNewConfig(String mapName) {
-        SimpleStore simpleStore = new SimpleStore();
+    private static void populateMap(HazelcastInstance node, IMap<Integer, Integer> map, int itemCount) {
+        BulkMapWriter<Integer, Integer> writer = new BulkMapWriter<Integer, Integer>(node, map, 100, 4);
+        try {
+            for (int i = 0; i < itemCount; i++) {
+                writer.put(i, i);
+            }
+        } finally {
+            writer.close();
+        }
+    }
 
+    private static Config createNewConfig(String mapName, SimpleStore simpleStore) {
         MapStoreConfig mapStoreConfig = new MapStoreConfig();
         mapStoreConfig.setImplementation(simpleStore);
         mapStoreConfig.setWriteDelaySeconds(0);
@@ -56,7 +77,7 @@ public class LoadAll {
         return config;
     }
 
-    private static class SimpleStore implements MapStore<Integer, Integer> {
+    static class SimpleStore implements MapStore<Integer, Integer> {
 
         private ConcurrentMap<Integer, Integer> store = new ConcurrentHashMap<Integer, Integer>();
 
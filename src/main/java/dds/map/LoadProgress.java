@@ -0,0 +1,138 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The progress of a {@link ParallelMapLoader} run, safe to read from any
+ * thread while the load is running.
+ */
+public class LoadProgress {
+
+    private final long totalKeys;
+    private final int[] partitionKeys;
+    private final AtomicIntegerArray loadedPartitionKeys;
+    private final AtomicLong loadedKeys = new AtomicLong();
+    private final AtomicInteger completedPartitions = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    LoadProgress(int[] partitionKeys) {
+        this.partitionKeys = partitionKeys;
+        this.loadedPartitionKeys = new AtomicIntegerArray(partitionKeys.length);
+        long total = 0;
+        int empty = 0;
+        for (int keys : partitionKeys) {
+            total += keys;
+            if (keys == 0) {
+                empty++;
+            }
+        }
+        this.totalKeys = total;
+        this.completedPartitions.set(empty);
+    }
+
+    void recordLoaded(int partitionId, int keys) {
+        loadedKeys.addAndGet(keys);
+        if (loadedPartitionKeys.addAndGet(partitionId, keys) == partitionKeys[partitionId]) {
+            completedPartitions.incrementAndGet();
+        }
+    }
+
+    void fail(Throwable t) {
+        failure.compareAndSet(null, t);
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+        done.countDown();
+    }
+
+    /**
+     * Waits until the load has finished.
+     *
+     * @throws RuntimeException if loading a chunk failed
+     */
+    public void await() throws InterruptedException {
+        done.await();
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new RuntimeException("Loading the map failed after " + getLoadedKeys() + " keys", t);
+        }
+    }
+
+    /**
+     * @return {@code true} if the load has finished
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public boolean isFailed() {
+        return failure.get() != null;
+    }
+
+    public long getTotalKeys() {
+        return totalKeys;
+    }
+
+    public long getLoadedKeys() {
+        return loadedKeys.get();
+    }
+
+    public int getPartitionCount() {
+        return partitionKeys.length;
+    }
+
+    public int getCompletedPartitions() {
+        return completedPartitions.get();
+    }
+
+    /**
+     * @return the fraction of the keys of the partition loaded, between 0 and 1
+     */
+    public double getPartitionCompletion(int partitionId) {
+        int keys = partitionKeys[partitionId];
+        return keys == 0 ? 1 : loadedPartitionKeys.get(partitionId) / (double) keys;
+    }
+
+    public long getElapsedMillis() {
+        long end = isDone() ? endNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    public double getKeysPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getLoadedKeys() * 1000d / elapsed;
+    }
+
+    /**
+     * @return the estimated time to completion at the average rate so far, or
+     * -1 if nothing has been loaded yet
+     */
+    public long getEtaMillis() {
+        if (isDone()) {
+            return 0;
+        }
+        long loaded = getLoadedKeys();
+        if (loaded == 0) {
+            return -1;
+        }
+        return (long) ((totalKeys - loaded) * (getElapsedMillis() / (double) loaded));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LoadProgress{loaded=%d/%d, partitions=%d/%d, keysPerSecond=%.0f, etaMillis=%d}",
+                getLoadedKeys(), getTotalKeys(), getCompletedPartitions(), getPartitionCount(),
+                getKeysPerSecond(), getEtaMillis());
+    }
+}
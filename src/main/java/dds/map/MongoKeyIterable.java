@@ -0,0 +1,77 @@
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static com.mongodb.client.model.Projections.include;
+
+/**
+ * Streams the {@code _id}s of a collection for {@code MapLoader.loadAllKeys()}.
+ * <p>
+ * Every iterator opens its own server-side cursor that fetches only the
+ * {@code _id} field, {@code batchSize} documents per round trip, so the keys
+ * are never copied into one large list. The iterator is {@link Closeable};
+ * Hazelcast closes it once the keys are loaded, and it also closes the cursor
+ * itself as soon as it is exhausted.
+ */
+public class MongoKeyIterable implements Iterable<String> {
+
+    private final MongoCollection<Document> collection;
+    private final int batchSize;
+
+    public MongoKeyIterable(MongoCollection<Document> collection, int batchSize) {
+        this.collection = collection;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new KeyCursor(collection.find().projection(include("_id")).batchSize(batchSize).iterator());
+    }
+
+    private static final class KeyCursor implements Iterator<String>, Closeable {
+
+        private final MongoCursor<Document> cursor;
+        private boolean closed;
+
+        KeyCursor(MongoCursor<Document> cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            if (!cursor.hasNext()) {
+                close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return cursor.next().get("_id").toString();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                cursor.close();
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
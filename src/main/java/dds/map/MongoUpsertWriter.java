@@ -0,0 +1,266 @@
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWaitQueueFullException;
+import com.mongodb.MongoWriteConcernException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Writes documents to MongoDB as unordered bulk upserts.
+ * <p>
+ * Every document replaces the document with the same {@code _id}, or is
+ * inserted if there is none, so storing a key a second time never fails on a
+ * duplicate key. A flush is split into sub-batches of at most the server's
+ * {@code maxWriteBatchSize} documents. When a sub-batch partially fails, only
+ * the documents reported in its write errors are retried, with an exponential
+ * backoff; when the whole request fails, e.g., on a network error, only that
+ * sub-batch is sent again. Upserts are idempotent, so retrying is safe.
+ * <p>
+ * Only transient errors are retried: network errors and timeouts, a primary
+ * which stepped down or a node which is recovering, and write concern
+ * errors. Other errors, e.g., a document failing validation, would fail again,
+ * so the documents they reject count as failed right away.
+ */
+public class MongoUpsertWriter {
+
+    /**
+     * The bulk write operation of a collection. It allows the writer to run
+     * against an in-process stand-in, as {@link MongoUpsertWriterDemo} does.
+     */
+    public interface BulkWriter {
+        BulkWriteResult bulkWrite(List<WriteModel<Document>> requests, BulkWriteOptions options);
+    }
+
+    private static final int DEFAULT_MAX_WRITE_BATCH_SIZE = 1000;
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    // the server error codes of network errors, timeouts, elections, shutdowns and write concern failures
+    private static final Set<Integer> TRANSIENT_ERROR_CODES = new HashSet<Integer>(Arrays.asList(
+            6, 7, 50, 64, 89, 91, 189, 262, 9001, 10107, 11600, 11602, 13435, 13436));
+
+    private final BulkWriter writer;
+    private final int maxBatchSize;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final MongoWriteStats stats = new MongoWriteStats();
+
+    public MongoUpsertWriter(final MongoCollection<Document> collection, int maxBatchSize, int maxAttempts) {
+        this(new BulkWriter() {
+            @Override
+            public BulkWriteResult bulkWrite(List<WriteModel<Document>> requests, BulkWriteOptions options) {
+                return collection.bulkWrite(requests, options);
+            }
+        }, maxBatchSize, maxAttempts, 50);
+    }
+
+    public MongoUpsertWriter(BulkWriter writer, int maxBatchSize, int maxAttempts, long backoffMillis) {
+        if (maxBatchSize < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("maxBatchSize and maxAttempts must be positive");
+        }
+        this.writer = writer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+    }
+
+    /**
+     * Asks the server for the largest number of write operations it accepts in
+     * one batch, see the {@code isMaster} command.
+     */
+    public static int maxWriteBatchSize(MongoDatabase database) {
+        try {
+            Integer size = database.runCommand(new Document("isMaster", 1)).getInteger("maxWriteBatchSize");
+            return size == null ? DEFAULT_MAX_WRITE_BATCH_SIZE : size;
+        } catch (MongoException e) {
+            return DEFAULT_MAX_WRITE_BATCH_SIZE;
+        }
+    }
+
+    public MongoWriteStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Upserts the given documents, keyed by their {@code _id}.
+     *
+     * @throws MongoException if some documents were rejected by a permanent
+     *                        error, or could still not be written after
+     *                        {@code maxAttempts} attempts
+     */
+    public void upsertAll(Map<String, Document> documents) {
+        long start = System.nanoTime();
+        List<WriteModel<Document>> batch = new ArrayList<WriteModel<Document>>(Math.min(maxBatchSize, documents.size()));
+        Failures failures = new Failures();
+        for (Map.Entry<String, Document> entry : documents.entrySet()) {
+            batch.add(new ReplaceOneModel<Document>(eq("_id", entry.getKey()), entry.getValue(), UPSERT));
+            if (batch.size() == maxBatchSize) {
+                write(batch, failures);
+                batch = new ArrayList<WriteModel<Document>>(maxBatchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch, failures);
+        }
+        int failed = failures.rejected + failures.exhausted;
+        stats.recordFlush(documents.size(), failed, System.nanoTime() - start);
+        if (failed > 0) {
+            throw new MongoException(failed + " of " + documents.size() + " documents could not be written: "
+                    + failures, failures.cause);
+        }
+    }
+
+    /**
+     * Writes a sub-batch, adding the documents that could not be written to the failures.
+     */
+    private void write(List<WriteModel<Document>> batch, Failures failures) {
+        List<WriteModel<Document>> pending = batch;
+        for (int attempt = 1; ; attempt++) {
+            stats.recordSubBatch();
+            List<WriteModel<Document>> failed;
+            MongoException error;
+            int errorCode;
+            try {
+                writer.bulkWrite(pending, new BulkWriteOptions().ordered(false));
+                return;
+            } catch (MongoBulkWriteException e) {
+                failed = new ArrayList<WriteModel<Document>>(e.getWriteErrors().size());
+                errorCode = e.getWriteConcernError() != null ? e.getWriteConcernError().getCode() : e.getCode();
+                for (BulkWriteError writeError : e.getWriteErrors()) {
+                    if (TRANSIENT_ERROR_CODES.contains(writeError.getCode())) {
+                        failed.add(pending.get(writeError.getIndex()));
+                        errorCode = writeError.getCode();
+                    } else {
+                        failures.reject(1, attempt, writeError.getCode(), e);
+                    }
+                }
+                if (e.getWriteErrors().isEmpty()) {
+                    // only the write concern failed, the state of all documents is unknown
+                    failed = pending;
+                }
+                error = e;
+            } catch (MongoException e) {
+                if (!isTransient(e)) {
+                    failures.reject(pending.size(), attempt, e.getCode(), e);
+                    return;
+                }
+                failed = pending;
+                error = e;
+                errorCode = e.getCode();
+            }
+            if (failed.isEmpty()) {
+                return;
+            }
+            if (attempt == maxAttempts) {
+                failures.exhaust(failed.size(), attempt, errorCode, error);
+                return;
+            }
+            stats.recordRetry(failed.size());
+            backoff(attempt);
+            pending = failed;
+        }
+    }
+
+    /**
+     * The documents of a flush that could not be written, and why.
+     */
+    private static final class Failures {
+
+        int rejected;
+        int rejectedCode;
+        int rejectedAttempts;
+        int exhausted;
+        int exhaustedCode;
+        int exhaustedAttempts;
+        MongoException cause;
+
+        /**
+         * Counts documents rejected by a non-transient error, which are not retried.
+         */
+        void reject(int documents, int attempt, int code, MongoException e) {
+            if (rejected == 0) {
+                rejectedCode = code;
+            }
+            rejected += documents;
+            rejectedAttempts = Math.max(rejectedAttempts, attempt);
+            if (cause == null) {
+                cause = e;
+            }
+        }
+
+        /**
+         * Counts documents which still failed with a transient error in the last attempt.
+         */
+        void exhaust(int documents, int attempts, int code, MongoException e) {
+            if (exhausted == 0) {
+                exhaustedCode = code;
+            }
+            exhausted += documents;
+            exhaustedAttempts = attempts;
+            if (cause == null) {
+                cause = e;
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            if (rejected > 0) {
+                sb.append(rejected).append(" rejected by the non-transient error code ").append(rejectedCode)
+                        .append(" after ").append(attempts(rejectedAttempts)).append(", not retried");
+            }
+            if (exhausted > 0) {
+                if (sb.length() > 0) {
+                    sb.append("; ");
+                }
+                sb.append(exhausted).append(" still failing with the transient error code ").append(exhaustedCode)
+                        .append(" after ").append(attempts(exhaustedAttempts));
+            }
+            return sb.toString();
+        }
+
+        private static String attempts(int attempts) {
+            return attempts == 1 ? "1 attempt" : attempts + " attempts";
+        }
+    }
+
+    private static boolean isTransient(MongoException e) {
+        return e instanceof MongoSocketException
+                || e instanceof MongoTimeoutException
+                || e instanceof MongoExecutionTimeoutException
+                || e instanceof MongoWaitQueueFullException
+                || e instanceof MongoNotPrimaryException
+                || e instanceof MongoNodeIsRecoveringException
+                || e instanceof MongoWriteConcernException
+                || TRANSIENT_ERROR_CODES.contains(e.getCode());
+    }
+
+    private void backoff(int attempt) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(backoffMillis << Math.min(attempt - 1, 10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoException("Interrupted while retrying a bulk write", e);
+        }
+    }
+}
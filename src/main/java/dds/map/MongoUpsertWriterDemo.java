@@ -0,0 +1,176 @@
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs {@link MongoUpsertWriter} against an in-process stand-in for MongoDB,
+ * with injected failures, and prints its per-flush counters. Transient
+ * failures are retried, a request failing with a permanent error is not.
+ */
+public class MongoUpsertWriterDemo {
+
+    private static final int FLUSHES = 20;
+    private static final int DOCUMENTS_PER_FLUSH = 10000;
+    private static final int KEYS = 50000;
+    private static final int HOST_UNREACHABLE = 6;
+    private static final int UNAUTHORIZED = 13;
+    private static final int DUPLICATE_KEY = 11000;
+
+    public static void main(String[] args) {
+        InMemoryCollection collection = new InMemoryCollection();
+        MongoUpsertWriter writer = new MongoUpsertWriter(collection, 1000, 5, 1);
+
+        // every 500th document fails once, and the first request fails as a whole
+        collection.failEveryNthWrite(500);
+        collection.failNextRequests(1, HOST_UNREACHABLE);
+
+        for (int flush = 0; flush < FLUSHES; flush++) {
+            // flushes overlap on the same keys, which would fail with duplicate keys when inserting
+            Map<String, Document> documents = new HashMap<String, Document>();
+            for (int i = 0; i < DOCUMENTS_PER_FLUSH; i++) {
+                String key = String.valueOf((flush * DOCUMENTS_PER_FLUSH / 2 + i) % KEYS);
+                documents.put(key, new Document("name", "supplement-" + key).append("price", flush).append("_id", key));
+            }
+            writer.upsertAll(documents);
+        }
+
+        System.out.printf("# Collection has %d documents, expected %d%n", collection.size(), KEYS);
+        System.out.println("# " + writer.getStats());
+
+        // a permanent error fails the flush without retrying it
+        collection.failEveryNthWrite(0);
+        collection.failNextRequests(1, UNAUTHORIZED);
+        long retriedBefore = writer.getStats().getRetriedDocuments();
+        try {
+            writer.upsertAll(Collections.singletonMap("0", new Document("_id", "0")));
+        } catch (MongoException e) {
+            System.out.printf("# Permanent error: %s, retried documents %d%n", e.getMessage(),
+                    writer.getStats().getRetriedDocuments() - retriedBefore);
+        }
+
+        // a transient error which outlasts the attempts fails the flush after all of them
+        collection.failNextRequests(5, HOST_UNREACHABLE);
+        try {
+            writer.upsertAll(Collections.singletonMap("0", new Document("_id", "0")));
+        } catch (MongoException e) {
+            System.out.printf("# Transient error: %s%n", e.getMessage());
+        }
+    }
+
+    /**
+     * An in-process stand-in for the bulk write path of a MongoDB collection,
+     * for this demo only. It keeps the documents in a map keyed by their
+     * {@code _id} and applies insert, replace and delete models, with filters
+     * on {@code _id} only, with the semantics of the server, including
+     * duplicate key errors, upserts and ordered/unordered execution. Failures
+     * are reported through {@link MongoBulkWriteException} like the driver does.
+     * <p>
+     * Failures can be injected: every n-th written document can fail with a
+     * transient write error, and the next requests can fail as a whole with a
+     * given error code.
+     */
+    private static class InMemoryCollection implements MongoUpsertWriter.BulkWriter {
+
+        private final ConcurrentMap<String, Document> documents = new ConcurrentHashMap<String, Document>();
+        private final AtomicLong writes = new AtomicLong();
+        private final AtomicInteger failingRequests = new AtomicInteger();
+        private volatile int failingRequestCode;
+        private volatile int failEveryNthWrite;
+
+        public void failEveryNthWrite(int n) {
+            this.failEveryNthWrite = n;
+        }
+
+        public void failNextRequests(int count, int code) {
+            failingRequestCode = code;
+            failingRequests.set(count);
+        }
+
+        public int size() {
+            return documents.size();
+        }
+
+        @Override
+        public synchronized BulkWriteResult bulkWrite(List<WriteModel<Document>> requests, BulkWriteOptions options) {
+            if (failingRequests.getAndDecrement() > 0) {
+                throw new MongoException(failingRequestCode, "Simulated error " + failingRequestCode);
+            }
+            List<BulkWriteError> errors = new ArrayList<BulkWriteError>();
+            List<BulkWriteUpsert> upserts = new ArrayList<BulkWriteUpsert>();
+            int inserted = 0;
+            int matched = 0;
+            int deleted = 0;
+            for (int i = 0; i < requests.size(); i++) {
+                WriteModel<Document> request = requests.get(i);
+                int n = failEveryNthWrite;
+                if (n > 0 && writes.incrementAndGet() % n == 0) {
+                    errors.add(new BulkWriteError(HOST_UNREACHABLE, "Simulated write error", new BsonDocument(), i));
+                } else if (request instanceof InsertOneModel) {
+                    Document document = ((InsertOneModel<Document>) request).getDocument();
+                    if (documents.putIfAbsent(document.get("_id").toString(), document) == null) {
+                        inserted++;
+                    } else {
+                        errors.add(new BulkWriteError(DUPLICATE_KEY, "E11000 duplicate key error", new BsonDocument(), i));
+                    }
+                } else if (request instanceof ReplaceOneModel) {
+                    ReplaceOneModel<Document> replace = (ReplaceOneModel<Document>) request;
+                    String id = idOf(replace.getFilter());
+                    if (documents.containsKey(id)) {
+                        documents.put(id, replace.getReplacement());
+                        matched++;
+                    } else if (replace.getOptions().isUpsert()) {
+                        documents.put(id, replace.getReplacement());
+                        upserts.add(new BulkWriteUpsert(i, new BsonString(id)));
+                    }
+                } else if (request instanceof DeleteOneModel) {
+                    if (documents.remove(idOf(((DeleteOneModel<Document>) request).getFilter())) != null) {
+                        deleted++;
+                    }
+                } else {
+                    throw new UnsupportedOperationException(request.getClass().getSimpleName());
+                }
+                if (options.isOrdered() && !errors.isEmpty()) {
+                    break;
+                }
+            }
+            BulkWriteResult result = BulkWriteResult.acknowledged(inserted, matched, deleted, matched, upserts);
+            if (!errors.isEmpty()) {
+                throw new MongoBulkWriteException(result, errors, null, new ServerAddress());
+            }
+            return result;
+        }
+
+        private static String idOf(Bson filter) {
+            BsonDocument document = filter.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry());
+            BsonValue id = document.get("_id");
+            if (id == null) {
+                throw new UnsupportedOperationException("Only filters on _id are supported: " + document);
+            }
+            return id.isString() ? id.asString().getValue() : id.toString();
+        }
+    }
+}
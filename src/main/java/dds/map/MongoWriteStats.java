@@ -0,0 +1,75 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-flush latency and throughput counters of {@link MongoUpsertWriter}.
+ */
+public class MongoWriteStats {
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder subBatches = new LongAdder();
+    private final LongAdder retriedDocuments = new LongAdder();
+    private final LongAdder failedDocuments = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    void recordSubBatch() {
+        subBatches.increment();
+    }
+
+    void recordRetry(int documentCount) {
+        retriedDocuments.add(documentCount);
+    }
+
+    void recordFlush(int documentCount, int failedCount, long nanos) {
+        flushes.increment();
+        documents.add(documentCount - failedCount);
+        failedDocuments.add(failedCount);
+        flushNanos.add(nanos);
+        maxFlushNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    public long getDocumentsWritten() {
+        return documents.sum();
+    }
+
+    public long getSubBatches() {
+        return subBatches.sum();
+    }
+
+    public long getRetriedDocuments() {
+        return retriedDocuments.sum();
+    }
+
+    public long getFailedDocuments() {
+        return failedDocuments.sum();
+    }
+
+    public double getAverageFlushMillis() {
+        long count = flushes.sum();
+        return count == 0 ? 0 : flushNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxFlushMillis() {
+        return maxFlushNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getDocumentsPerSecond() {
+        long nanos = flushNanos.sum();
+        return nanos == 0 ? 0 : documents.sum() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MongoWriteStats{flushes=%d, documents=%d, subBatches=%d, retried=%d, failed=%d,"
+                        + " avgFlushMillis=%.2f, maxFlushMillis=%.2f, documentsPerSecond=%.0f}",
+                getFlushes(), getDocumentsWritten(), getSubBatches(), getRetriedDocuments(), getFailedDocuments(),
+                getAverageFlushMillis(), getMaxFlushMillis(), getDocumentsPerSecond());
+    }
+}
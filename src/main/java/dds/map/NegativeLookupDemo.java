@@ -0,0 +1,62 @@
+import com.hazelcast.map.MapStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up ids of which only half exist in the {@code person} table, through
+ * {@link PersonMapStore} directly and through a {@link NegativeLookupMapStore}
+ * in front of it, and reports the filter's memory, false positive rate and
+ * the database round trips saved.
+ */
+public class NegativeLookupDemo {
+
+    private static final int ROWS = 100000;
+    private static final int LOOKUPS = 200000;
+
+    public static void main(String[] args) {
+        PersonMapStore personMapStore = new PersonMapStore("jdbc:hsqldb:mem:negativelookup", 4, 1000);
+        NegativeLookupMapStore<Long, Person> store = new NegativeLookupMapStore<Long, Person>(personMapStore,
+                ROWS, 0.01);
+        try {
+            Map<Long, Person> rows = new HashMap<Long, Person>();
+            for (long id = 0; id < ROWS; id++) {
+                // only the even ids exist
+                rows.put(id * 2, new Person(id * 2, "name-" + id));
+            }
+            personMapStore.storeAll(rows);
+            store.init(null, new Properties(), "persons");
+            // init builds the filter in the background; wait for one before measuring
+            store.rebuild();
+
+            lookUp("PersonMapStore", personMapStore);
+            lookUp("NegativeLookupMapStore", store);
+
+            KeyBloomFilter filter = store.getFilter();
+            System.out.printf("filter: %,d bytes, %d hash functions, estimated false positive probability %.4f%n",
+                    filter.getMemoryBytes(), filter.getHashCount(), filter.getEstimatedFalsePositiveProbability());
+            System.out.printf("database round trips: %,d instead of %,d%n",
+                    LOOKUPS - store.getStats().getSkipped(), LOOKUPS);
+            System.out.println(store.getStats());
+        } finally {
+            store.destroy();
+        }
+    }
+
+    private static void lookUp(String name, MapStore<Long, Person> store) {
+        Random random = new Random(42);
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (store.load((long) random.nextInt(ROWS * 2)) != null) {
+                found++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-24s: %d of %d found, %,10.0f lookups/sec%n", name, found, LOOKUPS,
+                LOOKUPS * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+    }
+}
@@ -0,0 +1,366 @@
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.MapLoaderLifecycleSupport;
+import com.hazelcast.map.MapStore;
+import com.hazelcast.partition.MigrationListener;
+import com.hazelcast.partition.MigrationState;
+import com.hazelcast.partition.ReplicaMigrationEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A decorator for any {@link MapStore} which remembers the keys that exist in
+ * the data store in a {@link KeyBloomFilter}, so that loads of keys which
+ * certainly do not exist are answered with {@code null} without a database
+ * round trip.
+ * <p>
+ * The filter is built in the background from {@code loadAllKeys} of the
+ * delegate when the map store is initialized; until it is ready, every load
+ * goes to the delegate. Every key stored through this map store is added to
+ * it. A Bloom filter cannot forget a key, so deleted keys still go to the
+ * delegate until the filter is rebuilt. {@link #rebuild()} starts over from
+ * {@code loadAllKeys}; it is started in the background once the stored and
+ * deleted keys since the last build exceed a fifth of {@code expectedKeys}.
+ * Writes which happen during a rebuild go to both the old and the new filter.
+ * <p>
+ * Keys can also appear without passing through this member's map store: with
+ * a partition migrated to this member, or as rows inserted into the database
+ * directly. So the filter only answers {@code null} on its own until a
+ * partition migration finishes in the cluster, and for at most
+ * {@code maxStalenessMillis} after its build started. A stale filter sends the
+ * keys it does not know to the delegate, adds the ones found and starts a
+ * rebuild. Rows inserted directly into the database can still be missed for
+ * up to {@code maxStalenessMillis}; choose it according to how the data store
+ * is written.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class NegativeLookupMapStore<K, V> implements MapStore<K, V>, MapLoaderLifecycleSupport {
+
+    private final MapStore<K, V> delegate;
+    private final long expectedKeys;
+    private final double falsePositiveProbability;
+    private final long maxStalenessNanos;
+    private final NegativeLookupStats stats = new NegativeLookupStats();
+    private final AtomicLong changesSinceBuild = new AtomicLong();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    // incremented by every finished migration; a filter built before one is stale
+    private final AtomicLong migrations = new AtomicLong();
+    // writes hold the read lock, installing and swapping the filter being rebuilt the write lock
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    private final Object rebuildMutex = new Object();
+    private volatile KeyBloomFilter filter;
+    private volatile KeyBloomFilter rebuilding;
+    private volatile long filterMigrations;
+    private volatile long filterBuildStartNanos;
+    private HazelcastInstance hazelcastInstance;
+    private UUID migrationListenerId;
+
+    public NegativeLookupMapStore(MapStore<K, V> delegate, long expectedKeys, double falsePositiveProbability) {
+        this(delegate, expectedKeys, falsePositiveProbability, TimeUnit.MINUTES.toMillis(10));
+    }
+
+    /**
+     * @param maxStalenessMillis how long after the start of its build a filter
+     *                           may answer {@code null} without the delegate
+     */
+    public NegativeLookupMapStore(MapStore<K, V> delegate, long expectedKeys, double falsePositiveProbability,
+                                  long maxStalenessMillis) {
+        if (maxStalenessMillis < 1) {
+            throw new IllegalArgumentException("maxStalenessMillis must be positive");
+        }
+        this.delegate = delegate;
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+    }
+
+    public NegativeLookupStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the current filter, {@code null} before the first build has finished
+     */
+    public KeyBloomFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Registers a migration listener and starts building the filter in the
+     * background, so the member does not wait for {@code loadAllKeys}.
+     */
+    @Override
+    public void init(HazelcastInstance hazelcastInstance, Properties properties, String mapName) {
+        if (delegate instanceof MapLoaderLifecycleSupport) {
+            ((MapLoaderLifecycleSupport) delegate).init(hazelcastInstance, properties, mapName);
+        }
+        if (hazelcastInstance != null) {
+            this.hazelcastInstance = hazelcastInstance;
+            this.migrationListenerId = hazelcastInstance.getPartitionService()
+                    .addMigrationListener(new StaleFilterMigrationListener());
+        }
+        scheduleRebuild();
+    }
+
+    @Override
+    public void destroy() {
+        if (migrationListenerId != null) {
+            hazelcastInstance.getPartitionService().removeMigrationListener(migrationListenerId);
+        }
+        if (delegate instanceof MapLoaderLifecycleSupport) {
+            ((MapLoaderLifecycleSupport) delegate).destroy();
+        }
+    }
+
+    @Override
+    public V load(K key) {
+        stats.recordLookups(1);
+        KeyBloomFilter current = filter;
+        if (current == null) {
+            return delegate.load(key);
+        }
+        boolean mightContain = current.mightContain(key);
+        if (!mightContain) {
+            if (isTrusted()) {
+                stats.recordSkipped(1);
+                return null;
+            }
+            scheduleRebuild();
+        }
+        V value = delegate.load(key);
+        if (value == null && mightContain) {
+            stats.recordFalsePositives(1);
+        } else if (value != null && !mightContain) {
+            addFound(key);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<K, V> loadAll(Collection<K> keys) {
+        stats.recordLookups(keys.size());
+        KeyBloomFilter current = filter;
+        if (current == null) {
+            return delegate.loadAll(keys);
+        }
+        if (!isTrusted()) {
+            scheduleRebuild();
+            Map<K, V> values = delegate.loadAll(keys);
+            for (K key : values.keySet()) {
+                if (!current.mightContain(key)) {
+                    addFound(key);
+                }
+            }
+            return values;
+        }
+        List<K> candidates = new ArrayList<K>(keys.size());
+        for (K key : keys) {
+            if (current.mightContain(key)) {
+                candidates.add(key);
+            }
+        }
+        stats.recordSkipped(keys.size() - candidates.size());
+        if (candidates.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<K, V> values = delegate.loadAll(candidates);
+        stats.recordFalsePositives(candidates.size() - values.size());
+        return values;
+    }
+
+    @Override
+    public Iterable<K> loadAllKeys() {
+        return delegate.loadAllKeys();
+    }
+
+    @Override
+    public void store(K key, V value) {
+        rebuildLock.readLock().lock();
+        try {
+            add(key);
+            delegate.store(key, value);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+        changed(1);
+    }
+
+    @Override
+    public void storeAll(Map<K, V> map) {
+        rebuildLock.readLock().lock();
+        try {
+            for (K key : map.keySet()) {
+                add(key);
+            }
+            delegate.storeAll(map);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+        changed(map.size());
+    }
+
+    @Override
+    public void delete(K key) {
+        delegate.delete(key);
+        changed(1);
+    }
+
+    @Override
+    public void deleteAll(Collection<K> keys) {
+        delegate.deleteAll(keys);
+        changed(keys.size());
+    }
+
+    /**
+     * Builds a new filter from {@code loadAllKeys} of the delegate and
+     * replaces the current one with it. Loads keep using the current filter
+     * meanwhile.
+     */
+    public void rebuild() {
+        synchronized (rebuildMutex) {
+            // read before loadAllKeys, so a migration finishing during the build leaves the new filter stale
+            long startMigrations = migrations.get();
+            long startNanos = System.nanoTime();
+            KeyBloomFilter next = new KeyBloomFilter(expectedKeys, falsePositiveProbability);
+            // once the lock is held, all writes in progress have reached the delegate, so
+            // they are seen by loadAllKeys, and all later ones are added to the next filter
+            rebuildLock.writeLock().lock();
+            try {
+                rebuilding = next;
+                changesSinceBuild.set(0);
+            } finally {
+                rebuildLock.writeLock().unlock();
+            }
+            try {
+                Iterable<K> keys = delegate.loadAllKeys();
+                if (keys != null) {
+                    addAll(next, keys);
+                }
+                filterMigrations = startMigrations;
+                filterBuildStartNanos = startNanos;
+                filter = next;
+                stats.recordRebuild();
+            } finally {
+                rebuildLock.writeLock().lock();
+                try {
+                    rebuilding = null;
+                } finally {
+                    rebuildLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if no migration has finished and less than
+     * {@code maxStalenessMillis} have passed since the current filter's build started
+     */
+    private boolean isTrusted() {
+        return filterMigrations == migrations.get() && System.nanoTime() - filterBuildStartNanos < maxStalenessNanos;
+    }
+
+    /**
+     * Adds a key which the delegate found although the filter did not contain it.
+     */
+    private void addFound(K key) {
+        rebuildLock.readLock().lock();
+        try {
+            add(key);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    private void add(K key) {
+        KeyBloomFilter current = filter;
+        if (current != null) {
+            current.add(key);
+        }
+        KeyBloomFilter next = rebuilding;
+        if (next != null) {
+            next.add(key);
+        }
+    }
+
+    private void changed(int keys) {
+        if (changesSinceBuild.addAndGet(keys) > expectedKeys / 5 && filter != null) {
+            scheduleRebuild();
+        }
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            Thread rebuilder = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        rebuild();
+                    } catch (RuntimeException e) {
+                        System.err.println("Rebuilding the key filter failed, the current one stays in use: " + e);
+                    } finally {
+                        rebuildScheduled.set(false);
+                    }
+                }
+            }, "key-filter-rebuilder");
+            rebuilder.setDaemon(true);
+            rebuilder.start();
+        }
+    }
+
+    private static <K> void addAll(KeyBloomFilter filter, Iterable<K> keys) {
+        Iterator<K> iterator = keys.iterator();
+        try {
+            while (iterator.hasNext()) {
+                filter.add(iterator.next());
+            }
+        } finally {
+            if (iterator instanceof Closeable) {
+                try {
+                    ((Closeable) iterator).close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the filter as stale once a migration has finished, as keys may
+     * have moved to this member, and starts a rebuild.
+     */
+    private class StaleFilterMigrationListener implements MigrationListener {
+
+        @Override
+        public void migrationStarted(MigrationState state) {
+        }
+
+        @Override
+        public void migrationFinished(MigrationState state) {
+            migrations.incrementAndGet();
+            scheduleRebuild();
+        }
+
+        @Override
+        public void replicaMigrationCompleted(ReplicaMigrationEvent event) {
+        }
+
+        @Override
+        public void replicaMigrationFailed(ReplicaMigrationEvent event) {
+        }
+    }
+}
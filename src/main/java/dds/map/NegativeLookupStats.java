@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of {@link NegativeLookupMapStore}.
+ */
+public class NegativeLookupStats {
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    void recordLookups(int keys) {
+        lookups.add(keys);
+    }
+
+    void recordSkipped(int keys) {
+        skipped.add(keys);
+    }
+
+    void recordFalsePositives(int keys) {
+        falsePositives.add(keys);
+    }
+
+    void recordRebuild() {
+        rebuilds.increment();
+    }
+
+    /**
+     * @return the number of keys looked up by {@code load} and {@code loadAll}
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return the number of keys answered without the delegate, i.e., the
+     * database round trips saved for {@code load}
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * @return the number of keys which passed the filter but were not found by the delegate
+     */
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return the share of the lookups of absent keys which passed the filter
+     */
+    public double getObservedFalsePositiveRate() {
+        long fp = getFalsePositives();
+        long absent = fp + getSkipped();
+        return absent == 0 ? 0 : fp / (double) absent;
+    }
+
+    public long getRebuilds() {
+        return rebuilds.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NegativeLookupStats{lookups=%d, skipped=%d, falsePositives=%d, "
+                        + "observedFalsePositiveRate=%.4f, rebuilds=%d}",
+                getLookups(), getSkipped(), getFalsePositives(), getObservedFalsePositiveRate(), getRebuilds());
+    }
+}
@@ -0,0 +1,28 @@
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Matches the rows whose expiration date, in milliseconds since the epoch,
+ * is still in the future when the statement is executed. Rows stored without
+ * an expiration date carry {@code MetadataAwareValue.NO_TIME_SET}, i.e.,
+ * {@link Long#MAX_VALUE}, and always match.
+ */
+public class NotExpiredCondition implements SqlCondition {
+
+    private final String column;
+
+    public NotExpiredCondition(String column) {
+        this.column = column;
+    }
+
+    @Override
+    public String sql() {
+        return "(" + column + " is null or " + column + " > ?)";
+    }
+
+    @Override
+    public int bind(PreparedStatement statement, int index) throws SQLException {
+        statement.setLong(index, System.currentTimeMillis());
+        return index + 1;
+    }
+}
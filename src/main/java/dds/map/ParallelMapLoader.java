@@ -0,0 +1,161 @@
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.partition.PartitionService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Loads a map from its MapStore with bounded pressure on the database, as an
+ * alternative to {@code IMap.loadAll(true)}.
+ * <p>
+ * The keys are sorted by partition and cut into chunks of {@code chunkSize}
+ * keys. {@code parallelism} threads take the chunks one after another and load
+ * each with {@code IMap.loadAll(keys, replaceExisting)}, which loads the keys
+ * of each partition in the chunk with one {@code MapStore.loadAll} call on the
+ * member owning the partition. As the chunks follow the partition order, a
+ * chunk touches only a few partitions. At most {@code parallelism} chunks are
+ * loading at a time and all threads share a ceiling of
+ * {@code maxKeysPerSecond}. The returned {@link LoadProgress} reports the keys
+ * loaded, the completed partitions and an ETA while the load is running.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ParallelMapLoader<K, V> {
+
+    private final HazelcastInstance hazelcastInstance;
+    private final IMap<K, V> map;
+    private final int parallelism;
+    private final int chunkSize;
+    private final long nanosPerKey;
+    // guarded by this
+    private long nextFreeNanos;
+
+    /**
+     * @param maxKeysPerSecond the rate ceiling over all threads, 0 for none
+     */
+    public ParallelMapLoader(HazelcastInstance hazelcastInstance, IMap<K, V> map, int parallelism, int chunkSize,
+                             int maxKeysPerSecond) {
+        if (parallelism < 1 || chunkSize < 1 || maxKeysPerSecond < 0) {
+            throw new IllegalArgumentException("parallelism and chunkSize must be positive and "
+                    + "maxKeysPerSecond must not be negative");
+        }
+        this.hazelcastInstance = hazelcastInstance;
+        this.map = map;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.nanosPerKey = maxKeysPerSecond == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / maxKeysPerSecond;
+    }
+
+    /**
+     * Starts loading the given keys, typically {@code loadAllKeys()} of the
+     * map's MapStore, and returns without waiting for the load to finish.
+     * The keys are read, and the iterator closed if it is {@link Closeable},
+     * before this method returns.
+     */
+    public LoadProgress start(Iterable<K> keys, final boolean replaceExisting) {
+        List<List<K>> keysByPartition = groupByPartition(keys);
+        final int[] partitionKeys = new int[keysByPartition.size()];
+        final List<K> sortedKeys = new ArrayList<K>();
+        for (int i = 0; i < partitionKeys.length; i++) {
+            partitionKeys[i] = keysByPartition.get(i).size();
+            sortedKeys.addAll(keysByPartition.get(i));
+        }
+        final LoadProgress progress = new LoadProgress(partitionKeys);
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicInteger runningWorkers = new AtomicInteger(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int from;
+                        while (!progress.isFailed()
+                                && (from = nextChunk.getAndIncrement() * chunkSize) < sortedKeys.size()) {
+                            int to = Math.min(from + chunkSize, sortedKeys.size());
+                            throttle(to - from);
+                            map.loadAll(new HashSet<K>(sortedKeys.subList(from, to)), replaceExisting);
+                            recordLoaded(progress, partitionKeys, from, to);
+                        }
+                    } catch (RuntimeException e) {
+                        progress.fail(e);
+                    } finally {
+                        if (runningWorkers.decrementAndGet() == 0) {
+                            progress.finish();
+                        }
+                    }
+                }
+            }, "parallel-map-loader-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        return progress;
+    }
+
+    private List<List<K>> groupByPartition(Iterable<K> keys) {
+        PartitionService partitionService = hazelcastInstance.getPartitionService();
+        int partitionCount = partitionService.getPartitions().size();
+        List<List<K>> keysByPartition = new ArrayList<List<K>>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            keysByPartition.add(new ArrayList<K>());
+        }
+        Iterator<K> iterator = keys.iterator();
+        try {
+            while (iterator.hasNext()) {
+                K key = iterator.next();
+                keysByPartition.get(partitionService.getPartition(key).getPartitionId()).add(key);
+            }
+        } finally {
+            if (iterator instanceof Closeable) {
+                try {
+                    ((Closeable) iterator).close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return keysByPartition;
+    }
+
+    /**
+     * Attributes the keys {@code [from, to)} of the sorted keys to their partitions.
+     */
+    private static void recordLoaded(LoadProgress progress, int[] partitionKeys, int from, int to) {
+        int partitionStart = 0;
+        for (int partitionId = 0; partitionId < partitionKeys.length && partitionStart < to; partitionId++) {
+            int partitionEnd = partitionStart + partitionKeys[partitionId];
+            int loaded = Math.min(to, partitionEnd) - Math.max(from, partitionStart);
+            if (loaded > 0) {
+                progress.recordLoaded(partitionId, loaded);
+            }
+            partitionStart = partitionEnd;
+        }
+    }
+
+    /**
+     * Reserves the next time slot for the given number of keys and waits for it.
+     */
+    private void throttle(int keys) {
+        if (nanosPerKey == 0) {
+            return;
+        }
+        long start;
+        synchronized (this) {
+            long now = System.nanoTime();
+            start = Math.max(now, nextFreeNanos);
+            nextFreeNanos = start + keys * nanosPerKey;
+        }
+        long wait;
+        while ((wait = start - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+}
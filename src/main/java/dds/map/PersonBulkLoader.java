@@ -0,0 +1,164 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads the rows of the {@code person} table for a collection of keys with
+ * as few round trips as possible. The keys are split into chunks of
+ * {@code chunkSize} and each chunk is fetched with a single
+ * {@code select ... where id in (?, ?, ...)} statement. Chunks are fetched on
+ * up to {@code parallelism} pooled connections at the same time. Keys without
+ * a row, or whose row does not satisfy the optional condition, are left out of
+ * the result.
+ *
+ * @param <V> the type the rows are mapped to
+ */
+public class PersonBulkLoader<V> {
+
+    /**
+     * Maps the current row of a result set to a value. Column 1 is always the id,
+     * the selected columns follow it.
+     */
+    public interface RowMapper<V> {
+        V map(long id, ResultSet resultSet) throws SQLException;
+    }
+
+    private final PersonConnectionPool pool;
+    private final String columns;
+    private final SqlCondition condition;
+    private final int chunkSize;
+    private final RowMapper<V> rowMapper;
+    private final ExecutorService executor;
+
+    public PersonBulkLoader(PersonConnectionPool pool, String columns, int chunkSize, int parallelism,
+                            RowMapper<V> rowMapper) {
+        this(pool, columns, null, chunkSize, parallelism, rowMapper);
+    }
+
+    public PersonBulkLoader(PersonConnectionPool pool, String columns, SqlCondition condition, int chunkSize,
+                            int parallelism, RowMapper<V> rowMapper) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.pool = pool;
+        this.columns = columns;
+        this.condition = condition;
+        this.chunkSize = chunkSize;
+        this.rowMapper = rowMapper;
+        this.executor = Executors.newFixedThreadPool(Math.min(parallelism, pool.getMaxSize()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "person-bulk-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public Map<Long, V> loadAll(Collection<Long> keys) {
+        List<List<Long>> chunks = new ArrayList<List<Long>>();
+        List<Long> chunk = new ArrayList<Long>(Math.min(chunkSize, keys.size()));
+        for (Long key : keys) {
+            chunk.add(key);
+            if (chunk.size() == chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<Long>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+
+        Map<Long, V> result = new HashMap<Long, V>();
+        if (chunks.size() == 1) {
+            // a single round trip, not worth a thread hand-off
+            loadChunk(chunks.get(0), result);
+            return result;
+        }
+
+        List<Future<Map<Long, V>>> futures = new ArrayList<Future<Map<Long, V>>>(chunks.size());
+        for (final List<Long> c : chunks) {
+            futures.add(executor.submit(new Callable<Map<Long, V>>() {
+                @Override
+                public Map<Long, V> call() {
+                    Map<Long, V> partial = new HashMap<Long, V>();
+                    loadChunk(c, partial);
+                    return partial;
+                }
+            }));
+        }
+        try {
+            for (Future<Map<Long, V>> future : futures) {
+                result.putAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return result;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void loadChunk(List<Long> keys, Map<Long, V> result) {
+        Connection con = pool.acquire();
+        try {
+            PreparedStatement select = con.prepareStatement(selectSql(keys.size()));
+            try {
+                for (int i = 0; i < keys.size(); i++) {
+                    select.setLong(i + 1, keys.get(i));
+                }
+                if (condition != null) {
+                    condition.bind(select, keys.size() + 1);
+                }
+                ResultSet resultSet = select.executeQuery();
+                try {
+                    while (resultSet.next()) {
+                        long id = resultSet.getLong(1);
+                        result.put(id, rowMapper.map(id, resultSet));
+                    }
+                } finally {
+                    resultSet.close();
+                }
+            } finally {
+                select.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.release(con);
+        }
+    }
+
+    private String selectSql(int keyCount) {
+        StringBuilder sql = new StringBuilder("select id, ").append(columns).append(" from person where id in (");
+        for (int i = 0; i < keyCount; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(')');
+        if (condition != null) {
+            sql.append(" and ").append(condition.sql());
+        }
+        return sql.toString();
+    }
+}
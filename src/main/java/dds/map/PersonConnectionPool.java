@@ -0,0 +1,92 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A small bounded JDBC connection pool. Connections are opened lazily up to
+ * {@code maxSize}; callers block until a connection is returned when the pool
+ * is exhausted, so concurrent partition flushes never open more connections
+ * than the database is expected to serve.
+ */
+public class PersonConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> all = new ArrayList<Connection>();
+
+    public PersonConnectionPool(String url, String user, String password, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idle = new ArrayBlockingQueue<Connection>(maxSize);
+    }
+
+    public Connection acquire() {
+        Connection con = idle.poll();
+        if (con != null) {
+            return con;
+        }
+        synchronized (all) {
+            if (all.size() < maxSize) {
+                con = open();
+                all.add(con);
+                return con;
+            }
+        }
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void release(Connection con) {
+        try {
+            if (!con.getAutoCommit()) {
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            idle.offer(con);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void close() {
+        synchronized (all) {
+            for (Connection con : all) {
+                try {
+                    con.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            all.clear();
+            idle.clear();
+        }
+    }
+
+    private Connection open() {
+        try {
+            return DriverManager.getConnection(url, user, password);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
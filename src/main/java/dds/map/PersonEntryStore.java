@@ -1,4 +1,6 @@
+import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.map.EntryStore;
+import com.hazelcast.map.MapLoaderLifecycleSupport;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -6,23 +8,71 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.String.format;
 
 //tag::personms[]
-public class PersonEntryStore implements EntryStore<Long, Person> {
+public class PersonEntryStore implements EntryStore<Long, Person>, MapLoaderLifecycleSupport {
 
     private final Connection con;
-    private final PreparedStatement allKeysStatement;
+    private final PersonConnectionPool pool;
+    private final SqlCondition notExpired = new NotExpiredCondition("expiration_date");
+    private final PersonBulkLoader<MetadataAwareValue<Person>> bulkLoader;
+    private final RangeShardedKeyIterable allKeys;
+    private final ExpiredPersonPurger purger;
 
     public PersonEntryStore() {
+        this("jdbc:hsqldb:mydatabase", 8, 1000);
+    }
+
+    public PersonEntryStore(String url, int poolSize, int loadChunkSize) {
+        this(url, poolSize, loadChunkSize, 0);
+    }
+
+    /**
+     * @param purgeIntervalSeconds the delay between two purges of the expired rows,
+     *                             {@code 0} disables the background purge
+     */
+    public PersonEntryStore(String url, int poolSize, int loadChunkSize, int purgeIntervalSeconds) {
+        this.pool = new PersonConnectionPool(url, "SA", "", poolSize);
+        this.bulkLoader = new PersonBulkLoader<MetadataAwareValue<Person>>(pool, "name, expiration_date",
+                notExpired, loadChunkSize, poolSize, new PersonBulkLoader.RowMapper<MetadataAwareValue<Person>>() {
+                    @Override
+                    public MetadataAwareValue<Person> map(long id, ResultSet resultSet) throws SQLException {
+                        return new MetadataAwareValue<>(new Person(id, resultSet.getString(2)),
+                                expirationTime(resultSet, 3));
+                    }
+                });
         try {
-            con = DriverManager.getConnection("jdbc:hsqldb:mydatabase", "SA", "");
+            con = DriverManager.getConnection(url, "SA", "");
+            con.createStatement().executeUpdate(
+                    "create table if not exists person (id bigint not null, name varchar(45), expiration_date bigint, primary key (id))");
             con.createStatement().executeUpdate(
-                    "create table if not exists person (id bigint not null, name varchar(45), expiration-date bigint, primary key (id))");
-            allKeysStatement = con.prepareStatement("select id from person");
+                    "create index if not exists person_expiration_date on person (expiration_date)");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        this.allKeys = new RangeShardedKeyIterable(pool, "person", notExpired, Math.max(1, poolSize / 2), 1000);
+        this.purger = new ExpiredPersonPurger(pool, 1000);
+        if (purgeIntervalSeconds > 0) {
+            purger.start(purgeIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void init(HazelcastInstance hazelcastInstance, Properties properties, String mapName) {
+    }
+
+    @Override
+    public void destroy() {
+        purger.stop();
+        bulkLoader.close();
+        pool.close();
+        try {
+            con.close();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -66,17 +116,23 @@ public class PersonEntryStore implements EntryStore<Long, Person> {
     @Override
     public synchronized MetadataAwareValue<Person> load(Long key) {
         try {
-            ResultSet resultSet = con.createStatement().executeQuery(
-                    format("select name,expiration-date from person where id =%s", key));
+            PreparedStatement select = con.prepareStatement(
+                    "select name,expiration_date from person where id = ? and " + notExpired.sql());
             try {
-                if (!resultSet.next()) {
-                    return null;
+                select.setLong(1, key);
+                notExpired.bind(select, 2);
+                ResultSet resultSet = select.executeQuery();
+                try {
+                    if (!resultSet.next()) {
+                        return null;
+                    }
+                    String name = resultSet.getString(1);
+                    return new MetadataAwareValue<>(new Person(key, name), expirationTime(resultSet, 2));
+                } finally {
+                    resultSet.close();
                 }
-                String name = resultSet.getString(1);
-                Long expirationDate = resultSet.getLong(2);
-                return new MetadataAwareValue<>(new Person(key, name), expirationDate);
             } finally {
-                resultSet.close();
+                select.close();
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -84,16 +140,29 @@ public class PersonEntryStore implements EntryStore<Long, Person> {
     }
 
     @Override
-    public synchronized Map<Long, MetadataAwareValue<Person>> loadAll(Collection<Long> keys) {
-        Map<Long, MetadataAwareValue<Person>> result = new HashMap<>();
-        for (Long key : keys) {
-            result.put(key, load(key));
-        }
-        return result;
+    public Map<Long, MetadataAwareValue<Person>> loadAll(Collection<Long> keys) {
+        return bulkLoader.loadAll(keys);
     }
 
     public Iterable<Long> loadAllKeys() {
-        return new StatementIterable<Long>(allKeysStatement);
+        return allKeys;
+    }
+
+    /**
+     * @return the purger of the expired rows, which only runs in the background
+     * if a purge interval was given to the constructor
+     */
+    public ExpiredPersonPurger getPurger() {
+        return purger;
+    }
+
+    /**
+     * @return the expiration date in the column, {@code NO_TIME_SET} if it is
+     * {@code NULL}, which {@code getLong} would return as {@code 0}, i.e., expired
+     */
+    private static long expirationTime(ResultSet resultSet, int column) throws SQLException {
+        long expirationTime = resultSet.getLong(column);
+        return resultSet.wasNull() ? MetadataAwareValue.NO_TIME_SET : expirationTime;
     }
 }
 //end::personms[]
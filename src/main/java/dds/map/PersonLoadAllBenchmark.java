@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time it takes to load all rows of the {@code person} table
+ * key by key, as {@code loadAll} used to do, with the chunked
+ * {@code where id in (...)} loading of {@link PersonBulkLoader}.
+ */
+public class PersonLoadAllBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int MISSING = 1000;
+    private static final int POOL_SIZE = 4;
+
+    public static void main(String[] args) {
+        String url = "jdbc:hsqldb:mem:loadall";
+        PersonMapStore populator = new PersonMapStore(url, POOL_SIZE, 1000);
+        List<Long> keys = new ArrayList<Long>(ROWS + MISSING);
+        try {
+            Map<Long, Person> rows = new HashMap<Long, Person>();
+            for (long id = 0; id < ROWS; id++) {
+                rows.put(id, new Person(id, "name-" + id));
+                keys.add(id);
+            }
+            populator.storeAll(rows);
+            // keys without a row must simply be left out of the result
+            for (long id = ROWS; id < ROWS + MISSING; id++) {
+                keys.add(id);
+            }
+
+            long start = System.nanoTime();
+            int found = 0;
+            for (Long key : keys) {
+                if (populator.load(key) != null) {
+                    found++;
+                }
+            }
+            report("per-key load", found, System.nanoTime() - start);
+
+            for (int chunkSize : new int[]{10, 100, 1000}) {
+                PersonMapStore store = new PersonMapStore(url, POOL_SIZE, 1000, chunkSize);
+                try {
+                    start = System.nanoTime();
+                    Map<Long, Person> loaded = store.loadAll(keys);
+                    report("loadAll, chunk size " + chunkSize, loaded.size(), System.nanoTime() - start);
+                } finally {
+                    store.destroy();
+                }
+            }
+        } finally {
+            populator.destroy();
+        }
+    }
+
+    private static void report(String name, int found, long nanos) {
+        System.out.printf("%-24s: %d rows found in %,6d ms (%,10.0f keys/sec)%n", name, found,
+                TimeUnit.NANOSECONDS.toMillis(nanos), (ROWS + MISSING) * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+    }
+}
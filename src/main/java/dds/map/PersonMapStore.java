@@ -1,91 +1,184 @@
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.MapLoaderLifecycleSupport;
 import com.hazelcast.map.MapStore;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Properties;
 
-import static java.lang.String.format;
 //tag::personms[]
-public class PersonMapStore implements MapStore<Long, Person> {
+public class PersonMapStore implements MapStore<Long, Person>, MapLoaderLifecycleSupport {
 
-    private final Connection con;
-    private final PreparedStatement allKeysStatement;
+    private static final String UPSERT = "merge into person using (values(cast(? as bigint), cast(? as varchar(45))))"
+            + " as v(id, name) on person.id = v.id"
+            + " when matched then update set person.name = v.name"
+            + " when not matched then insert values v.id, v.name";
+
+    private final PersonConnectionPool pool;
+    private final int batchSize;
+    private final PersonBulkLoader<Person> bulkLoader;
+    private final RangeShardedKeyIterable allKeys;
+    private final JdbcWriteStats writeStats = new JdbcWriteStats();
 
     public PersonMapStore() {
+        this("jdbc:hsqldb:mydatabase", 8, 1000, 1000);
+    }
+
+    public PersonMapStore(String url, int poolSize, int batchSize) {
+        this(url, poolSize, batchSize, 1000);
+    }
+
+    public PersonMapStore(String url, int poolSize, int batchSize, int loadChunkSize) {
+        this.pool = new PersonConnectionPool(url, "SA", "", poolSize);
+        this.batchSize = batchSize;
+        this.bulkLoader = new PersonBulkLoader<Person>(pool, "name", loadChunkSize, poolSize,
+                new PersonBulkLoader.RowMapper<Person>() {
+                    @Override
+                    public Person map(long id, ResultSet resultSet) throws SQLException {
+                        return new Person(id, resultSet.getString(2));
+                    }
+                });
+        // leave half of the pool to loadAll, which starts while the keys are still streamed
+        this.allKeys = new RangeShardedKeyIterable(pool, "person", Math.max(1, poolSize / 2), 1000);
+        Connection con = pool.acquire();
         try {
-            con = DriverManager.getConnection("jdbc:hsqldb:mydatabase", "SA", "");
             con.createStatement().executeUpdate(
                     "create table if not exists person (id bigint not null, name varchar(45), primary key (id))");
-            allKeysStatement = con.prepareStatement("select id from person");
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            pool.release(con);
         }
     }
 
-    public synchronized void delete(Long key) {
-        System.out.println("Delete:" + key);
+    @Override
+    public void init(HazelcastInstance hazelcastInstance, Properties properties, String mapName) {
+    }
+
+    @Override
+    public void destroy() {
+        bulkLoader.close();
+        pool.close();
+    }
+
+    public JdbcWriteStats getWriteStats() {
+        return writeStats;
+    }
+
+    public void delete(Long key) {
+        deleteAll(Collections.singleton(key));
+    }
+
+    public void store(Long key, Person value) {
+        storeAll(Collections.singletonMap(key, value));
+    }
+
+    public void storeAll(Map<Long, Person> map) {
+        Connection c = pool.acquire();
         try {
-            con.createStatement().executeUpdate(
-                    format("delete from person where id = %s", key));
+            c.setAutoCommit(false);
+            PreparedStatement upsert = c.prepareStatement(UPSERT);
+            try {
+                int pending = 0;
+                long start = System.nanoTime();
+                for (Map.Entry<Long, Person> entry : map.entrySet()) {
+                    upsert.setLong(1, entry.getKey());
+                    upsert.setString(2, entry.getValue().getName());
+                    upsert.addBatch();
+                    if (++pending == batchSize) {
+                        upsert.executeBatch();
+                        c.commit();
+                        writeStats.recordWrite(pending, System.nanoTime() - start);
+                        pending = 0;
+                        start = System.nanoTime();
+                    }
+                }
+                if (pending > 0) {
+                    upsert.executeBatch();
+                    c.commit();
+                    writeStats.recordWrite(pending, System.nanoTime() - start);
+                }
+            } finally {
+                upsert.close();
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            pool.release(c);
         }
     }
 
-    public synchronized void store(Long key, Person value) {
+    public void deleteAll(Collection<Long> keys) {
+        Connection c = pool.acquire();
         try {
-            con.createStatement().executeUpdate(
-                    format("insert into person values(%s,'%s')", key, value.getName()));
+            c.setAutoCommit(false);
+            PreparedStatement delete = c.prepareStatement("delete from person where id = ?");
+            try {
+                int pending = 0;
+                long start = System.nanoTime();
+                for (Long key : keys) {
+                    delete.setLong(1, key);
+                    delete.addBatch();
+                    if (++pending == batchSize) {
+                        delete.executeBatch();
+                        c.commit();
+                        writeStats.recordDelete(pending, System.nanoTime() - start);
+                        pending = 0;
+                        start = System.nanoTime();
+                    }
+                }
+                if (pending > 0) {
+                    delete.executeBatch();
+                    c.commit();
+                    writeStats.recordDelete(pending, System.nanoTime() - start);
+                }
+            } finally {
+                delete.close();
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            pool.release(c);
         }
     }
 
-    public synchronized void storeAll(Map<Long, Person> map) {
-        for (Map.Entry<Long, Person> entry : map.entrySet()) {
-            store(entry.getKey(), entry.getValue());
-        }
-    }
-
-    public synchronized void deleteAll(Collection<Long> keys) {
-        for (Long key : keys) {
-            delete(key);
-        }
-    }
-
-    public synchronized Person load(Long key) {
+    public Person load(Long key) {
+        Connection c = pool.acquire();
         try {
-            ResultSet resultSet = con.createStatement().executeQuery(
-                    format("select name from person where id =%s", key));
+            PreparedStatement select = c.prepareStatement("select name from person where id = ?");
             try {
-                if (!resultSet.next()) {
-                    return null;
+                select.setLong(1, key);
+                ResultSet resultSet = select.executeQuery();
+                try {
+                    if (!resultSet.next()) {
+                        return null;
+                    }
+                    String name = resultSet.getString(1);
+                    return new Person(key, name);
+                } finally {
+                    resultSet.close();
                 }
-                String name = resultSet.getString(1);
-                return new Person(key, name);
             } finally {
-                resultSet.close();
+                select.close();
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            pool.release(c);
         }
     }
 
-    public synchronized Map<Long, Person> loadAll(Collection<Long> keys) {
-        Map<Long, Person> result = new HashMap<Long, Person>();
-        for (Long key : keys) {
-            result.put(key, load(key));
-        }
-        return result;
+    public Map<Long, Person> loadAll(Collection<Long> keys) {
+        return bulkLoader.loadAll(keys);
     }
 
     public Iterable<Long> loadAllKeys() {
-        return new StatementIterable<Long>(allKeysStatement);
+        return allKeys;
     }
 }
 //end::personms[]
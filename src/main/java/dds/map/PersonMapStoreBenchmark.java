@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the write throughput of {@link PersonMapStore} against an embedded
+ * in-memory HSQLDB for several JDBC batch sizes. Each flusher thread plays the
+ * role of a partition flushing its write-behind queue through {@code storeAll}.
+ */
+public class PersonMapStoreBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int FLUSH_SIZE = 5000;
+    private static final int FLUSHERS = 4;
+
+    public static void main(String[] args) throws Exception {
+        int[] batchSizes = {1, 10, 100, 1000};
+        System.out.printf("# %d rows, %d rows per storeAll, %d parallel flushers%n", ROWS, FLUSH_SIZE, FLUSHERS);
+        for (int batchSize : batchSizes) {
+            PersonMapStore store = new PersonMapStore("jdbc:hsqldb:mem:bench" + batchSize, FLUSHERS, batchSize);
+            try {
+                // the first pass inserts, the second one exercises the update branch of the upsert
+                long insertNanos = run(store);
+                long updateNanos = run(store);
+                System.out.printf("batch size %5d: insert %,10.0f rows/sec, upsert %,10.0f rows/sec (%s)%n",
+                        batchSize, rowsPerSecond(insertNanos), rowsPerSecond(updateNanos), store.getWriteStats());
+            } finally {
+                store.destroy();
+            }
+        }
+    }
+
+    private static long run(final PersonMapStore store) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(FLUSHERS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int from = 0; from < ROWS; from += FLUSH_SIZE) {
+                final Map<Long, Person> chunk = new HashMap<Long, Person>();
+                for (long id = from; id < Math.min(from + FLUSH_SIZE, ROWS); id++) {
+                    chunk.put(id, new Person(id, "name-" + id));
+                }
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        store.storeAll(chunk);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static double rowsPerSecond(long nanos) {
+        return ROWS * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+}
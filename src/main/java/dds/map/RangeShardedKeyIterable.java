@@ -0,0 +1,305 @@
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams the {@code id} column of a table for {@code MapLoader.loadAllKeys()}.
+ * <p>
+ * The key space is split into {@code shards} id ranges between {@code min(id)}
+ * and {@code max(id)}. Every range is read by its own thread in blocks of
+ * ordered ids, each block with one query on a pooled connection, and the
+ * blocks are handed over through a bounded queue as soon as they are read.
+ * Hazelcast therefore starts sending keys to their partition owners, which in
+ * turn start loading values, while the ranges are still being scanned. The
+ * bounded queue keeps the number of keys held in memory independent of the
+ * table size.
+ * <p>
+ * A scanner returns its connection to the pool before it hands a block over,
+ * so a scanner waiting for the consumer holds no connection. The loads of the
+ * values, and other iterations, can therefore share the pool with the scans
+ * without waiting for connections which are only released once the keys
+ * have been consumed.
+ * <p>
+ * The returned iterator is {@link Closeable}: closing it, or exhausting it,
+ * stops the scans.
+ */
+public class RangeShardedKeyIterable implements Iterable<Long> {
+
+    private static final KeyBlock END = new KeyBlock(0);
+
+    private final PersonConnectionPool pool;
+    private final String table;
+    private final SqlCondition condition;
+    private final int shards;
+    private final int fetchSize;
+    private final int blockSize;
+
+    public RangeShardedKeyIterable(PersonConnectionPool pool, String table, int shards, int fetchSize) {
+        this(pool, table, null, shards, fetchSize);
+    }
+
+    /**
+     * @param condition an additional condition the streamed rows must satisfy,
+     *                  {@code null} streams all rows
+     */
+    public RangeShardedKeyIterable(PersonConnectionPool pool, String table, SqlCondition condition, int shards,
+                                   int fetchSize) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be positive: " + shards);
+        }
+        this.pool = pool;
+        this.table = table;
+        this.condition = condition;
+        this.shards = shards;
+        this.fetchSize = fetchSize;
+        this.blockSize = Math.max(fetchSize, 100);
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        long[] bounds = idBounds();
+        if (bounds == null) {
+            return new ShardedKeyIterator(new ArrayList<long[]>());
+        }
+        return new ShardedKeyIterator(split(bounds[0], bounds[1]));
+    }
+
+    private long[] idBounds() {
+        Connection con = pool.acquire();
+        try {
+            PreparedStatement statement = con.prepareStatement(
+                    "select min(id), max(id) from " + table + where(null));
+            try {
+                if (condition != null) {
+                    condition.bind(statement, 1);
+                }
+                ResultSet resultSet = statement.executeQuery();
+                try {
+                    resultSet.next();
+                    long min = resultSet.getLong(1);
+                    if (resultSet.wasNull()) {
+                        return null;
+                    }
+                    return new long[]{min, resultSet.getLong(2)};
+                } finally {
+                    resultSet.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.release(con);
+        }
+    }
+
+    /**
+     * Splits {@code [min, max]} into at most {@code shards} inclusive ranges.
+     * The step divides both bounds before subtracting them, so it cannot overflow.
+     */
+    private List<long[]> split(long min, long max) {
+        List<long[]> ranges = new ArrayList<long[]>(shards);
+        long step = Math.max(1, max / shards - min / shards + 1);
+        long low = min;
+        for (int i = 0; i < shards && low <= max; i++) {
+            long high = i == shards - 1 || max - low < step ? max : low + step - 1;
+            ranges.add(new long[]{low, high});
+            if (high == max) {
+                break;
+            }
+            low = high + 1;
+        }
+        return ranges;
+    }
+
+    private String where(String rangeCondition) {
+        if (condition == null && rangeCondition == null) {
+            return "";
+        }
+        if (condition == null) {
+            return " where " + rangeCondition;
+        }
+        if (rangeCondition == null) {
+            return " where " + condition.sql();
+        }
+        return " where " + rangeCondition + " and " + condition.sql();
+    }
+
+    private static final class KeyBlock {
+        final long[] keys;
+        int size;
+
+        KeyBlock(int capacity) {
+            keys = new long[capacity];
+        }
+    }
+
+    private final class ShardedKeyIterator implements Iterator<Long>, Closeable {
+
+        private final BlockingQueue<KeyBlock> queue;
+        private final List<Thread> scanners = new ArrayList<Thread>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private volatile boolean closed;
+        private int runningScanners;
+        private KeyBlock current;
+        private int index;
+
+        ShardedKeyIterator(List<long[]> ranges) {
+            this.queue = new ArrayBlockingQueue<KeyBlock>(2 * Math.max(1, ranges.size()) + 1);
+            this.runningScanners = ranges.size();
+            for (final long[] range : ranges) {
+                Thread scanner = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        scan(range[0], range[1]);
+                    }
+                }, "key-range-scanner-" + range[0] + "-" + range[1]);
+                scanner.setDaemon(true);
+                scanners.add(scanner);
+            }
+            for (Thread scanner : scanners) {
+                scanner.start();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            while (current == null || index == current.size) {
+                if (closed || runningScanners == 0) {
+                    close();
+                    return false;
+                }
+                KeyBlock block;
+                try {
+                    block = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new RuntimeException(e);
+                }
+                if (block == END) {
+                    runningScanners--;
+                    if (failure.get() != null) {
+                        close();
+                        rethrowFailure();
+                    }
+                } else {
+                    current = block;
+                    index = 0;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.keys[index++];
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Thread scanner : scanners) {
+                scanner.interrupt();
+            }
+            queue.clear();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void rethrowFailure() {
+            Throwable t = failure.get();
+            if (t != null) {
+                throw new RuntimeException("Key scan failed", t);
+            }
+        }
+
+        private void scan(long low, long high) {
+            try {
+                long from = low;
+                while (!closed) {
+                    KeyBlock block = readBlock(from, high);
+                    if (block.size > 0) {
+                        queue.put(block);
+                    }
+                    long last = block.keys[Math.max(0, block.size - 1)];
+                    if (block.size < blockSize || last == high) {
+                        break;
+                    }
+                    from = last + 1;
+                }
+            } catch (InterruptedException e) {
+                // closed by the consumer
+                return;
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+            signalEnd();
+        }
+
+        /**
+         * @return the first {@code blockSize} ids between {@code from} and
+         * {@code high}, read on a connection which is released before returning
+         */
+        private KeyBlock readBlock(long from, long high) throws SQLException {
+            Connection con = pool.acquire();
+            try {
+                PreparedStatement statement = con.prepareStatement(
+                        "select id from " + table + where("id >= ? and id <= ?") + " order by id");
+                try {
+                    statement.setFetchSize(fetchSize);
+                    statement.setMaxRows(blockSize);
+                    statement.setLong(1, from);
+                    statement.setLong(2, high);
+                    if (condition != null) {
+                        condition.bind(statement, 3);
+                    }
+                    ResultSet resultSet = statement.executeQuery();
+                    try {
+                        KeyBlock block = new KeyBlock(blockSize);
+                        while (block.size < blockSize && resultSet.next()) {
+                            block.keys[block.size++] = resultSet.getLong(1);
+                        }
+                        return block;
+                    } finally {
+                        resultSet.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                pool.release(con);
+            }
+        }
+
+        private void signalEnd() {
+            try {
+                queue.put(END);
+            } catch (InterruptedException ignored) {
+                // closed by the consumer, nobody waits for the end marker anymore
+            }
+        }
+    }
+}
@@ -3,10 +3,14 @@ import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class ResultSetIterator<T> implements Iterator<T>, Closeable {
 
     private ResultSet resultSet;
+    private boolean advanced;
+    private boolean hasNext;
+    private boolean closed;
 
     public ResultSetIterator(ResultSet resultSet) {
         this.resultSet = resultSet;
@@ -14,24 +18,42 @@ public class ResultSetIterator<T> implements Iterator<T>, Closeable {
 
     @Override
     public boolean hasNext() {
-        try {
-            return resultSet.next();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        if (!advanced && !closed) {
+            try {
+                hasNext = resultSet.next();
+            } catch (SQLException e) {
+                closeQuietly();
+                throw new RuntimeException(e);
+            }
+            advanced = true;
+            if (!hasNext) {
+                // release the cursor as soon as it is exhausted, even if nobody calls close()
+                closeQuietly();
+            }
         }
+        return hasNext && !closed;
     }
 
     @Override
     public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        advanced = false;
         try {
             return (T) resultSet.getObject(1);
         } catch (SQLException e) {
+            closeQuietly();
             throw new RuntimeException(e);
         }
     }
 
     @Override
     public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
         try {
             resultSet.close();
         } catch (SQLException e) {
@@ -43,4 +65,11 @@ public class ResultSetIterator<T> implements Iterator<T>, Closeable {
     public void remove() {
         throw new UnsupportedOperationException();
     }
-}
\ No newline at end of file
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+    }
+}
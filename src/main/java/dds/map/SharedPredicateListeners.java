@@ -0,0 +1,268 @@
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryLoadedListener;
+import com.hazelcast.map.listener.EntryMergedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
+import com.hazelcast.map.listener.MapEvictedListener;
+import com.hazelcast.map.listener.MapListener;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registers entry listeners with SQL predicates on a map so that listeners
+ * with the same predicate share one registration.
+ * <p>
+ * Each registration with a predicate makes the members evaluate the
+ * predicate and send an event of their own for every change of the map.
+ * This class registers one listener per distinct predicate and set of event
+ * types with the map and hands its events to all listeners added with them,
+ * so an event is filtered and sent once per predicate instead of once per
+ * listener. A registration subscribes only to the entry event types its
+ * listeners implement, e.g. {@code EntryAddedListener} and
+ * {@code EntryUpdatedListener}; listeners with the same predicate but other
+ * event types get a registration of their own. Map-wide events, i.e.
+ * {@code MapClearedListener} and {@code MapEvictedListener}, are not filtered
+ * by a predicate, so such listeners are rejected; register them with the map
+ * directly.
+ * <p>
+ * The predicate strings are parsed once and the parsed predicates are cached
+ * until the last listener added with the string is removed. Two strings share a registration if they parse to the same predicate, so
+ * {@code "surname=smith"} and {@code "surname = smith"} do, but
+ * {@code "a = 1 and b = 2"} and {@code "b = 2 and a = 1"} do not. The members
+ * evaluate the predicates against the values in serialized form for
+ * {@code Portable} values, reading only the attributes the predicate uses;
+ * other values are deserialized for each evaluation.
+ * <p>
+ * A listener which throws does not keep the other listeners of its
+ * registration from receiving the event; the exception is logged.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class SharedPredicateListeners<K, V> {
+
+    private static final ILogger LOGGER = Logger.getLogger(SharedPredicateListeners.class);
+    // the entry event types a shared registration can subscribe to, one bit each
+    private static final List<Class<? extends MapListener>> EVENT_TYPES = new ArrayList<Class<? extends MapListener>>();
+
+    static {
+        EVENT_TYPES.add(EntryAddedListener.class);
+        EVENT_TYPES.add(EntryUpdatedListener.class);
+        EVENT_TYPES.add(EntryRemovedListener.class);
+        EVENT_TYPES.add(EntryEvictedListener.class);
+        EVENT_TYPES.add(EntryExpiredListener.class);
+        EVENT_TYPES.add(EntryLoadedListener.class);
+        EVENT_TYPES.add(EntryMergedListener.class);
+    }
+
+    private final IMap<K, V> map;
+    private final boolean includeValue;
+    // guarded by this
+    private final Map<String, SharedListener> sharedListeners = new HashMap<String, SharedListener>();
+    private final Map<UUID, Registration> registrations = new HashMap<UUID, Registration>();
+    private final Map<String, CompiledPredicate> compiled = new HashMap<String, CompiledPredicate>();
+
+    public SharedPredicateListeners(IMap<K, V> map, boolean includeValue) {
+        this.map = map;
+        this.includeValue = includeValue;
+    }
+
+    /**
+     * Adds a listener for the entries matching the predicate, registering the
+     * predicate and the listener's event types with the map if no other
+     * listener uses them yet.
+     *
+     * @return the id to remove the listener with
+     * @throws IllegalArgumentException if the listener implements
+     *                                  {@code MapClearedListener} or {@code MapEvictedListener},
+     *                                  or none of the entry event listener interfaces
+     */
+    public synchronized UUID addEntryListener(MapListener listener, String predicate) {
+        if (listener instanceof MapClearedListener || listener instanceof MapEvictedListener) {
+            throw new IllegalArgumentException("Map-wide events are not filtered by a predicate, "
+                    + "register " + listener + " with the map directly");
+        }
+        int eventTypes = eventTypesOf(listener);
+        if (eventTypes == 0) {
+            throw new IllegalArgumentException(listener + " implements none of the entry event listeners");
+        }
+        String sql = predicate.trim();
+        CompiledPredicate parsed = compiled.get(sql);
+        if (parsed == null) {
+            parsed = new CompiledPredicate(Predicates.<K, V>sql(sql));
+            compiled.put(sql, parsed);
+        }
+        // the parsed predicate prints in a normalized form
+        String key = eventTypes + ":" + parsed.predicate;
+        SharedListener shared = sharedListeners.get(key);
+        if (shared == null) {
+            shared = new SharedListener();
+            shared.registrationId = map.addEntryListener(shared.proxy(eventTypes), parsed.predicate, includeValue);
+            sharedListeners.put(key, shared);
+        }
+        shared.listeners.add(listener);
+        parsed.uses++;
+        UUID id = UUID.randomUUID();
+        registrations.put(id, new Registration(key, sql, listener));
+        return id;
+    }
+
+    /**
+     * Removes the listener and deregisters its predicate from the map if no
+     * other listener uses it.
+     *
+     * @return {@code true} if the listener was registered
+     */
+    public synchronized boolean removeEntryListener(UUID id) {
+        Registration registration = registrations.remove(id);
+        if (registration == null) {
+            return false;
+        }
+        SharedListener shared = sharedListeners.get(registration.key);
+        shared.listeners.remove(registration.listener);
+        if (shared.listeners.isEmpty()) {
+            sharedListeners.remove(registration.key);
+            map.removeEntryListener(shared.registrationId);
+        }
+        CompiledPredicate parsed = compiled.get(registration.sql);
+        if (--parsed.uses == 0) {
+            compiled.remove(registration.sql);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of listeners registered with the map
+     */
+    public synchronized int getRegistrationCount() {
+        return sharedListeners.size();
+    }
+
+    private static int eventTypesOf(MapListener listener) {
+        int eventTypes = 0;
+        for (int i = 0; i < EVENT_TYPES.size(); i++) {
+            if (EVENT_TYPES.get(i).isInstance(listener)) {
+                eventTypes |= 1 << i;
+            }
+        }
+        return eventTypes;
+    }
+
+    private static final class Registration {
+        final String key;
+        final String sql;
+        final MapListener listener;
+
+        Registration(String key, String sql, MapListener listener) {
+            this.key = key;
+            this.sql = sql;
+            this.listener = listener;
+        }
+    }
+
+    private final class CompiledPredicate {
+        final Predicate<K, V> predicate;
+        // the number of registrations added with the predicate string
+        int uses;
+
+        CompiledPredicate(Predicate<K, V> predicate) {
+            this.predicate = predicate;
+        }
+    }
+
+    /**
+     * Hands the events of one registration to the listeners sharing it. All
+     * of them implement the same entry event listener interfaces.
+     */
+    private final class SharedListener implements InvocationHandler {
+
+        final List<MapListener> listeners = new CopyOnWriteArrayList<MapListener>();
+        UUID registrationId;
+
+        /**
+         * @return a listener implementing exactly the given event types, as the
+         * map subscribes a registration to the types its listener implements
+         */
+        MapListener proxy(int eventTypes) {
+            List<Class<?>> interfaces = new ArrayList<Class<?>>();
+            for (int i = 0; i < EVENT_TYPES.size(); i++) {
+                if ((eventTypes & 1 << i) != 0) {
+                    interfaces.add(EVENT_TYPES.get(i));
+                }
+            }
+            return (MapListener) Proxy.newProxyInstance(SharedPredicateListeners.class.getClassLoader(),
+                    interfaces.toArray(new Class<?>[0]), this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+            EntryEvent<K, V> event = cast(args[0]);
+            for (MapListener listener : listeners) {
+                try {
+                    dispatch(method.getName(), listener, event);
+                } catch (RuntimeException e) {
+                    // keep delivering to the other listeners, as separate registrations would
+                    LOGGER.warning("Listener " + listener + " failed on " + event, e);
+                }
+            }
+            return null;
+        }
+
+        private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+            if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            }
+            return "SharedListener{registrationId=" + registrationId + ", listeners=" + listeners.size() + '}';
+        }
+
+        @SuppressWarnings("unchecked")
+        private void dispatch(String method, MapListener listener, EntryEvent<K, V> event) {
+            if ("entryAdded".equals(method)) {
+                ((EntryAddedListener<K, V>) listener).entryAdded(event);
+            } else if ("entryUpdated".equals(method)) {
+                ((EntryUpdatedListener<K, V>) listener).entryUpdated(event);
+            } else if ("entryRemoved".equals(method)) {
+                ((EntryRemovedListener<K, V>) listener).entryRemoved(event);
+            } else if ("entryEvicted".equals(method)) {
+                ((EntryEvictedListener<K, V>) listener).entryEvicted(event);
+            } else if ("entryExpired".equals(method)) {
+                ((EntryExpiredListener<K, V>) listener).entryExpired(event);
+            } else if ("entryLoaded".equals(method)) {
+                ((EntryLoadedListener<K, V>) listener).entryLoaded(event);
+            } else if ("entryMerged".equals(method)) {
+                ((EntryMergedListener<K, V>) listener).entryMerged(event);
+            } else {
+                // the proxy implements only the entry event listener interfaces
+                throw new IllegalStateException("Unexpected listener method " + method);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private EntryEvent<K, V> cast(Object event) {
+            return (EntryEvent<K, V>) event;
+        }
+    }
+}
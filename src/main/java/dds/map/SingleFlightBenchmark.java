@@ -0,0 +1,142 @@
+import com.hazelcast.map.MapStore;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thundering-herd workload against a simulated database: many threads miss
+ * on a small set of hot keys at the same time. Compares the database queries
+ * per second and the load latency percentiles of calling the store directly,
+ * of {@link SingleFlightMapStore} collapsing identical keys, and of
+ * {@link SingleFlightMapStore} also merging misses into {@code loadAll} calls.
+ */
+public class SingleFlightBenchmark {
+
+    private static final int THREADS = 64;
+    private static final int LOADS_PER_THREAD = 2000;
+    private static final int HOT_KEYS = 32;
+
+    public static void main(String[] args) throws Exception {
+        SimulatedDatabase database = new SimulatedDatabase();
+        run("direct", database, database);
+        database = new SimulatedDatabase();
+        run("single-flight", database, new SingleFlightMapStore<Integer, String>(database));
+        database = new SimulatedDatabase();
+        run("single-flight + 200us batches", database, new SingleFlightMapStore<Integer, String>(database, 200, 64));
+    }
+
+    private static void run(String name, SimulatedDatabase database, final MapStore<Integer, String> store)
+            throws Exception {
+        final long[][] latencies = new long[THREADS][LOADS_PER_THREAD];
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            final long[] threadLatencies = latencies[t];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    try {
+                        start.await();
+                        for (int i = 0; i < LOADS_PER_THREAD; i++) {
+                            int key = random.nextInt(HOT_KEYS);
+                            long begin = System.nanoTime();
+                            store.load(key);
+                            threadLatencies[i] = System.nanoTime() - begin;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        long[] all = new long[THREADS * LOADS_PER_THREAD];
+        for (int t = 0; t < THREADS; t++) {
+            System.arraycopy(latencies[t], 0, all, t * LOADS_PER_THREAD, LOADS_PER_THREAD);
+        }
+        Arrays.sort(all);
+        long queries = database.queries.get();
+        double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.printf("%-30s: %,8.0f loads/sec, %,7.0f db queries/sec, p50 %,6d us, p99 %,6d us%n", name,
+                all.length / seconds, queries / seconds,
+                TimeUnit.NANOSECONDS.toMicros(all[all.length / 2]),
+                TimeUnit.NANOSECONDS.toMicros(all[(int) (all.length * 0.99)]));
+        if (store instanceof SingleFlightMapStore) {
+            System.out.println("    " + ((SingleFlightMapStore) store).getStats());
+        }
+    }
+
+    /**
+     * A database with a pool of 8 connections and a fixed round trip time,
+     * which serves {@code loadAll} in a single round trip.
+     */
+    private static class SimulatedDatabase implements MapStore<Integer, String> {
+
+        private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+        private final Semaphore connections = new Semaphore(8);
+        private final AtomicLong queries = new AtomicLong();
+
+        @Override
+        public String load(Integer key) {
+            query();
+            return "value-" + key;
+        }
+
+        @Override
+        public Map<Integer, String> loadAll(Collection<Integer> keys) {
+            query();
+            Map<Integer, String> result = new HashMap<Integer, String>();
+            for (Integer key : keys) {
+                result.put(key, "value-" + key);
+            }
+            return result;
+        }
+
+        private void query() {
+            connections.acquireUninterruptibly();
+            try {
+                queries.incrementAndGet();
+                LockSupport.parkNanos(ROUND_TRIP_NANOS);
+            } finally {
+                connections.release();
+            }
+        }
+
+        @Override
+        public Iterable<Integer> loadAllKeys() {
+            return null;
+        }
+
+        @Override
+        public void store(Integer key, String value) {
+        }
+
+        @Override
+        public void storeAll(Map<Integer, String> map) {
+        }
+
+        @Override
+        public void delete(Integer key) {
+        }
+
+        @Override
+        public void deleteAll(Collection<Integer> keys) {
+        }
+    }
+}
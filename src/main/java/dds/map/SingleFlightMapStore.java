@@ -0,0 +1,215 @@
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.MapLoaderLifecycleSupport;
+import com.hazelcast.map.MapStore;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A read-through decorator for any {@link MapStore} that collapses concurrent
+ * misses.
+ * <p>
+ * When several threads call {@code load} for the same key at the same time,
+ * only the first one calls the delegate; the others wait for its result. On top
+ * of that, with a positive {@code batchWindowMicros}, the misses for different
+ * keys arriving within the window are merged into one {@code loadAll} call of
+ * the delegate: the first miss waits for the window to pass, or for
+ * {@code maxBatchSize} keys to gather, and then loads the whole batch.
+ * <p>
+ * The window adds up to {@code batchWindowMicros} to the latency of a miss and
+ * blocks the calling thread meanwhile, which is a partition thread for
+ * {@code IMap.get}. Keep it small, or zero to only collapse identical keys.
+ * Writes are passed through to the delegate.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class SingleFlightMapStore<K, V> implements MapStore<K, V>, MapLoaderLifecycleSupport {
+
+    private final MapStore<K, V> delegate;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+    private final Object batchLock = new Object();
+    private final SingleFlightStats stats = new SingleFlightStats();
+    // guarded by batchLock
+    private Batch openBatch;
+
+    public SingleFlightMapStore(MapStore<K, V> delegate) {
+        this(delegate, 0, 1);
+    }
+
+    public SingleFlightMapStore(MapStore<K, V> delegate, long batchWindowMicros, int maxBatchSize) {
+        this.delegate = delegate;
+        this.batchWindowNanos = TimeUnit.MICROSECONDS.toNanos(batchWindowMicros);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public SingleFlightStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void init(HazelcastInstance hazelcastInstance, Properties properties, String mapName) {
+        if (delegate instanceof MapLoaderLifecycleSupport) {
+            ((MapLoaderLifecycleSupport) delegate).init(hazelcastInstance, properties, mapName);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (delegate instanceof MapLoaderLifecycleSupport) {
+            ((MapLoaderLifecycleSupport) delegate).destroy();
+        }
+    }
+
+    @Override
+    public V load(K key) {
+        stats.recordLoad();
+        CompletableFuture<V> future = new CompletableFuture<V>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            stats.recordCollapsed();
+            return await(existing);
+        }
+        try {
+            if (batchWindowNanos == 0 || maxBatchSize < 2) {
+                try {
+                    stats.recordDelegateLoad();
+                    future.complete(delegate.load(key));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            } else {
+                joinBatch(key, future);
+            }
+            return await(future);
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    @Override
+    public Map<K, V> loadAll(Collection<K> keys) {
+        return delegate.loadAll(keys);
+    }
+
+    @Override
+    public Iterable<K> loadAllKeys() {
+        return delegate.loadAllKeys();
+    }
+
+    @Override
+    public void store(K key, V value) {
+        delegate.store(key, value);
+    }
+
+    @Override
+    public void storeAll(Map<K, V> map) {
+        delegate.storeAll(map);
+    }
+
+    @Override
+    public void delete(K key) {
+        delegate.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Collection<K> keys) {
+        delegate.deleteAll(keys);
+    }
+
+    private void joinBatch(K key, CompletableFuture<V> future) {
+        Batch batch;
+        boolean leader = false;
+        boolean full = false;
+        synchronized (batchLock) {
+            if (openBatch == null) {
+                openBatch = new Batch(Thread.currentThread());
+                leader = true;
+            }
+            batch = openBatch;
+            batch.futures.put(key, future);
+            if (batch.futures.size() >= maxBatchSize) {
+                openBatch = null;
+                full = true;
+            }
+        }
+        if (!leader) {
+            if (full) {
+                LockSupport.unpark(batch.leader);
+            }
+            return;
+        }
+
+        long deadline = System.nanoTime() + batchWindowNanos;
+        Map<K, CompletableFuture<V>> futures;
+        for (; ; ) {
+            synchronized (batchLock) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || openBatch != batch) {
+                    if (openBatch == batch) {
+                        openBatch = null;
+                    }
+                    futures = batch.futures;
+                    break;
+                }
+            }
+            LockSupport.parkNanos(this, deadline - System.nanoTime());
+        }
+        loadBatch(futures);
+    }
+
+    private void loadBatch(Map<K, CompletableFuture<V>> futures) {
+        try {
+            Map<K, V> values;
+            if (futures.size() == 1) {
+                K key = futures.keySet().iterator().next();
+                stats.recordDelegateLoad();
+                values = new HashMap<K, V>();
+                values.put(key, delegate.load(key));
+            } else {
+                stats.recordDelegateLoadAll(futures.size());
+                values = delegate.loadAll(futures.keySet());
+            }
+            for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+                // keys missing from the result do not exist
+                entry.getValue().complete(values.get(entry.getKey()));
+            }
+        } catch (RuntimeException e) {
+            for (CompletableFuture<V> future : futures.values()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    private final class Batch {
+        final Thread leader;
+        // guarded by batchLock until the batch is closed, read by the leader only afterwards
+        final Map<K, CompletableFuture<V>> futures = new HashMap<K, CompletableFuture<V>>();
+
+        Batch(Thread leader) {
+            this.leader = leader;
+        }
+    }
+}
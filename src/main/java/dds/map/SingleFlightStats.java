@@ -0,0 +1,66 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of {@link SingleFlightMapStore}.
+ */
+public class SingleFlightStats {
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder collapsedLoads = new LongAdder();
+    private final LongAdder delegateLoads = new LongAdder();
+    private final LongAdder delegateLoadAlls = new LongAdder();
+    private final LongAdder batchedKeys = new LongAdder();
+
+    void recordLoad() {
+        loads.increment();
+    }
+
+    void recordCollapsed() {
+        collapsedLoads.increment();
+    }
+
+    void recordDelegateLoad() {
+        delegateLoads.increment();
+    }
+
+    void recordDelegateLoadAll(int keys) {
+        delegateLoadAlls.increment();
+        batchedKeys.add(keys);
+    }
+
+    /**
+     * @return the number of {@code load} calls received
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * @return the number of {@code load} calls which waited for the result of
+     * a load of the same key already in flight
+     */
+    public long getCollapsedLoads() {
+        return collapsedLoads.sum();
+    }
+
+    /**
+     * @return the number of calls to the delegate, i.e., of database round trips
+     */
+    public long getDelegateCalls() {
+        return delegateLoads.sum() + delegateLoadAlls.sum();
+    }
+
+    /**
+     * @return the average number of keys per merged {@code loadAll} call
+     */
+    public double getAverageBatchSize() {
+        long batches = delegateLoadAlls.sum();
+        return batches == 0 ? 0 : batchedKeys.sum() / (double) batches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SingleFlightStats{loads=%d, collapsedLoads=%d, delegateCalls=%d, averageBatchSize=%.1f}",
+                getLoads(), getCollapsedLoads(), getDelegateCalls(), getAverageBatchSize());
+    }
+}
@@ -0,0 +1,21 @@
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A condition added to the {@code where} clause of the queries of the JDBC
+ * backed map stores, together with the parameters it binds at execution time.
+ */
+public interface SqlCondition {
+
+    /**
+     * @return the condition, with {@code ?} placeholders for its parameters
+     */
+    String sql();
+
+    /**
+     * Binds the parameters of the condition starting at {@code index}.
+     *
+     * @return the index of the first parameter after the condition
+     */
+    int bind(PreparedStatement statement, int index) throws SQLException;
+}
@@ -5,17 +5,32 @@ import java.util.Iterator;
 public class StatementIterable<T> implements Iterable<T> {
 
     private PreparedStatement statement;
+    private int fetchSize;
 
     public StatementIterable(PreparedStatement statement) {
+        this(statement, 0);
+    }
+
+    /**
+     * @param fetchSize the number of rows the driver fetches per round trip,
+     *                  {@code 0} keeps the driver default
+     */
+    public StatementIterable(PreparedStatement statement, int fetchSize) {
         this.statement = statement;
+        this.fetchSize = fetchSize;
     }
 
+    /**
+     * Returns a {@link ResultSetIterator}. It is {@link java.io.Closeable}, so Hazelcast
+     * closes it once the keys are loaded; it also closes itself when exhausted.
+     */
     @Override
     public Iterator<T> iterator() {
         try {
+            statement.setFetchSize(fetchSize);
             return new ResultSetIterator<T>(statement.executeQuery());
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+}
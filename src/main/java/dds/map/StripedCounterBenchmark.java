@@ -0,0 +1,60 @@
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+/**
+ * Increments a single hot key from a growing number of threads, spread over
+ * two members, with {@code IncrementingEntryProcessor} and with a
+ * {@link StripedMapCounter}, and checks that no increment is lost.
+ */
+public class StripedCounterBenchmark {
+
+    private static final long DURATION_SECONDS = 3;
+    private static final Integer KEY = 1;
+
+    public static void main(String[] args) throws Exception {
+        final HazelcastInstance[] members = {Hazelcast.newHazelcastInstance(), Hazelcast.newHazelcastInstance()};
+        try {
+            for (int threads : new int[]{1, 2, 4, 8}) {
+                final String epMapName = "ep-" + threads;
+                members[0].<Integer, Integer>getMap(epMapName).put(KEY, 0);
+                long epIncrements = DeadlineThreads.run(threads, DURATION_SECONDS, new DeadlineThreads.Task() {
+                    @Override
+                    public void run(int thread, long iteration) {
+                        members[thread % members.length].<Integer, Integer>getMap(epMapName)
+                                .executeOnKey(KEY, new IncrementingEntryProcessor());
+                    }
+                });
+                long epValue = members[0].<Integer, Integer>getMap(epMapName).get(KEY);
+
+                String stripedMapName = "striped-" + threads;
+                //tag::stripedcounter[]
+                @SuppressWarnings("unchecked")
+                final StripedMapCounter<Integer>[] counters = new StripedMapCounter[members.length];
+                for (int i = 0; i < members.length; i++) {
+                    // fold the increments into the map every 100 milliseconds
+                    counters[i] = StripedMapCounter.of(members[i], stripedMapName, 100);
+                }
+                long stripedIncrements = DeadlineThreads.run(threads, DURATION_SECONDS, new DeadlineThreads.Task() {
+                    @Override
+                    public void run(int thread, long iteration) {
+                        counters[thread % members.length].increment(KEY);
+                    }
+                });
+                long stale = counters[0].get(KEY);
+                long exact = counters[0].getExact(KEY);
+                //end::stripedcounter[]
+                for (StripedMapCounter<Integer> counter : counters) {
+                    counter.close();
+                }
+
+                System.out.printf("%d threads: entry processor %,10.0f/s (lost %d), striped %,12.0f/s "
+                                + "(lost %d, get() behind by %,d)%n", threads,
+                        epIncrements / (double) DURATION_SECONDS, epIncrements - epValue,
+                        stripedIncrements / (double) DURATION_SECONDS, stripedIncrements - exact, exact - stale);
+            }
+        } finally {
+            Hazelcast.shutdownAll();
+        }
+    }
+}
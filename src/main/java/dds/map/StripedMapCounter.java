@@ -0,0 +1,258 @@
+import com.hazelcast.cluster.Member;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters kept as {@code Long} values of a map, for keys which are
+ * incremented too often to update the map on every increment.
+ * <p>
+ * Each member adds the increments of its threads to a {@link LongAdder} per
+ * key, which spreads contending threads over several cells, and folds the
+ * sums into the map every {@code flushIntervalMillis} with one entry
+ * processor per key. A hot key then costs one partition operation per
+ * member and interval instead of one per increment. {@link #get} adds the
+ * increments of this member which have not been folded yet to the map value,
+ * so it misses at most one interval of the increments of the other members.
+ * {@link #getExact} folds the increments of all members first.
+ * <p>
+ * Get the counter of a member with {@link #of}, which keeps it in the
+ * member's user context, where the folding task sent by {@code getExact}
+ * finds it, until it is closed.
+ * <p>
+ * The adder of a key which has not been incremented for a whole flush
+ * interval is dropped, so keys which are no longer counted do not keep their
+ * adders; the next increment creates a new one. An increment which looked the
+ * adder up before it was dropped still lands in it and is folded one flush
+ * later, provided it does not take longer than a flush interval to get from
+ * the lookup to the adder.
+ *
+ * @param <K> the key type
+ */
+public class StripedMapCounter<K> implements Closeable {
+
+    private static final ILogger LOGGER = Logger.getLogger(StripedMapCounter.class);
+    private static final String USER_CONTEXT_PREFIX = "striped-map-counter:";
+
+    private final HazelcastInstance hazelcastInstance;
+    private final IMap<K, Long> map;
+    private final ConcurrentMap<K, LongAdder> pending = new ConcurrentHashMap<K, LongAdder>();
+    private final ScheduledExecutorService flusher;
+    // guarded by this: the adders which were zero at the last flush, and the ones dropped by it
+    private Map<K, LongAdder> idle = new HashMap<K, LongAdder>();
+    private Map<K, LongAdder> dropped = new HashMap<K, LongAdder>();
+
+    private StripedMapCounter(HazelcastInstance hazelcastInstance, String mapName, long flushIntervalMillis) {
+        this.hazelcastInstance = hazelcastInstance;
+        this.map = hazelcastInstance.getMap(mapName);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "striped-map-counter-" + StripedMapCounter.this.map.getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    // the increments stay pending until the next flush
+                    LOGGER.warning("Folding the counters of " + StripedMapCounter.this.map.getName()
+                            + " failed, retrying in the next flush", e);
+                }
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the counter of the map on this member, created with the given
+     * flush interval on the first call
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> StripedMapCounter<K> of(HazelcastInstance hazelcastInstance, String mapName,
+                                              long flushIntervalMillis) {
+        ConcurrentMap<String, Object> userContext = hazelcastInstance.getUserContext();
+        String contextKey = USER_CONTEXT_PREFIX + mapName;
+        StripedMapCounter<K> counter = (StripedMapCounter<K>) userContext.get(contextKey);
+        if (counter == null) {
+            StripedMapCounter<K> created = new StripedMapCounter<K>(hazelcastInstance, mapName, flushIntervalMillis);
+            counter = (StripedMapCounter<K>) userContext.putIfAbsent(contextKey, created);
+            if (counter == null) {
+                counter = created;
+            } else {
+                created.flusher.shutdown();
+            }
+        }
+        return counter;
+    }
+
+    public void increment(K key) {
+        add(key, 1);
+    }
+
+    public void add(K key, long delta) {
+        LongAdder adder = pending.get(key);
+        if (adder == null) {
+            LongAdder created = new LongAdder();
+            adder = pending.putIfAbsent(key, created);
+            if (adder == null) {
+                adder = created;
+            }
+        }
+        adder.add(delta);
+    }
+
+    /**
+     * @return the counter, missing at most one flush interval of the
+     * increments on the other members
+     */
+    public long get(K key) {
+        Long value = map.get(key);
+        LongAdder adder = pending.get(key);
+        return (value == null ? 0 : value) + (adder == null ? 0 : adder.sum());
+    }
+
+    /**
+     * Folds the pending increments of all members into the map and reads the
+     * counter, which then includes all increments which completed before
+     * this call.
+     */
+    public long getExact(K key) {
+        Map<Member, Future<Void>> futures = hazelcastInstance.getExecutorService(USER_CONTEXT_PREFIX + map.getName())
+                .submitToAllMembers(new FlushTask(map.getName()));
+        try {
+            for (Future<Void> future : futures.values()) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        Long value = map.get(key);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Folds the pending increments of this member into the map.
+     */
+    public synchronized void flush() {
+        // increments which raced with the dropping of their adder
+        for (Map.Entry<K, LongAdder> entry : dropped.entrySet()) {
+            fold(entry.getKey(), entry.getValue());
+        }
+        dropped = new HashMap<K, LongAdder>();
+        Map<K, LongAdder> nowIdle = new HashMap<K, LongAdder>();
+        for (Map.Entry<K, LongAdder> entry : pending.entrySet()) {
+            K key = entry.getKey();
+            LongAdder adder = entry.getValue();
+            if (fold(key, adder)) {
+                continue;
+            }
+            if (idle.get(key) != adder) {
+                nowIdle.put(key, adder);
+            } else if (pending.remove(key, adder)) {
+                dropped.put(key, adder);
+            }
+        }
+        idle = nowIdle;
+    }
+
+    /**
+     * @return {@code true} if the adder had increments to fold
+     */
+    private boolean fold(K key, LongAdder adder) {
+        long delta = adder.sum();
+        if (delta == 0) {
+            return false;
+        }
+        // subtract before folding, so a concurrent get never counts the delta in the map and in the adder;
+        // subtract rather than reset, which could lose concurrent increments
+        adder.add(-delta);
+        try {
+            map.executeOnKey(key, new AddProcessor<K>(delta));
+        } catch (RuntimeException e) {
+            // folded again by the next flush, twice if the entry processor ran before it failed, e.g. on a timeout
+            adder.add(delta);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Stops the periodic flushes after folding the pending increments, and
+     * removes the counter from the user context, so the next {@link #of}
+     * creates a new one.
+     */
+    @Override
+    public void close() {
+        hazelcastInstance.getUserContext().remove(USER_CONTEXT_PREFIX + map.getName(), this);
+        flusher.shutdown();
+        flush();
+    }
+
+    private static class AddProcessor<K> implements EntryProcessor<K, Long, Long> {
+
+        private final long delta;
+
+        AddProcessor(long delta) {
+            this.delta = delta;
+        }
+
+        @Override
+        public Long process(Map.Entry<K, Long> entry) {
+            Long value = entry.getValue();
+            long sum = (value == null ? 0 : value) + delta;
+            entry.setValue(sum);
+            return sum;
+        }
+    }
+
+    private static class FlushTask
+            implements Callable<Void>, Serializable, HazelcastInstanceAware {
+
+        private final String mapName;
+        private transient HazelcastInstance hazelcastInstance;
+
+        FlushTask(String mapName) {
+            this.mapName = mapName;
+        }
+
+        @Override
+        public void setHazelcastInstance(HazelcastInstance hazelcastInstance) {
+            this.hazelcastInstance = hazelcastInstance;
+        }
+
+        @Override
+        public Void call() {
+            StripedMapCounter<?> counter = (StripedMapCounter<?>)
+                    hazelcastInstance.getUserContext().get(USER_CONTEXT_PREFIX + mapName);
+            if (counter != null) {
+                counter.flush();
+            }
+            return null;
+        }
+    }
+}
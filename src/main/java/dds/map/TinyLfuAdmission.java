@@ -0,0 +1,52 @@
+/**
+ * A TinyLFU admission filter: it records the accesses of keys in a
+ * {@link FrequencySketch}, including the accesses of keys which are not
+ * cached, and lets a new entry replace a victim only if the new entry's key
+ * has been accessed more often recently. Entries read once by a scan have the
+ * lowest frequency, so they do not push out the hot entries.
+ * <p>
+ * Neither {@code IMap} nor the Near Cache tells an eviction policy about
+ * reads, so the accesses have to be recorded with {@link #recordAccess(Object)}
+ * where the keys are read. Neither of them lets a policy reject a new entry
+ * either, so {@link #admit} is only used by {@code TinyLfuTraceReplay};
+ * {@link TinyLfuEvictionPolicy} and {@code TinyLfuNearCacheComparator} use
+ * {@link #compare} to pick the entries to evict from a sample.
+ */
+public class TinyLfuAdmission {
+
+    private final FrequencySketch sketch;
+
+    /**
+     * @param capacity the number of entries of the cache
+     */
+    public TinyLfuAdmission(int capacity) {
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    public void recordAccess(Object key) {
+        sketch.increment(key);
+    }
+
+    /**
+     * @return the estimated number of recent accesses of the key, between 0 and 15
+     */
+    public int frequency(Object key) {
+        return sketch.frequency(key);
+    }
+
+    /**
+     * @return {@code true} if the candidate may evict the victim
+     */
+    public boolean admit(Object candidateKey, Object victimKey) {
+        return sketch.frequency(candidateKey) > sketch.frequency(victimKey);
+    }
+
+    /**
+     * Orders entries for eviction: the less frequently accessed first and,
+     * of equally frequent entries, the least recently accessed first.
+     */
+    public int compare(Object key1, long lastAccessTime1, Object key2, long lastAccessTime2) {
+        int result = Integer.compare(sketch.frequency(key1), sketch.frequency(key2));
+        return result != 0 ? result : Long.compare(lastAccessTime1, lastAccessTime2);
+    }
+}
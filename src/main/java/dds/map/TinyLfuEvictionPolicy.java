@@ -0,0 +1,26 @@
+import com.hazelcast.core.EntryView;
+import com.hazelcast.map.eviction.MapEvictionPolicy;
+
+/**
+ * Evicts the sampled entry whose key has been accessed least often recently,
+ * according to a {@link TinyLfuAdmission}. A new entry read once by a scan
+ * loses against the hot entries of the sample, so the scan evicts its own
+ * entries instead of the hot set. It only orders the eviction: the map
+ * still stores every new entry.
+ * <p>
+ * Configure it per map with {@code MapConfig.setMapEvictionPolicy}.
+ */
+public class TinyLfuEvictionPolicy extends MapEvictionPolicy {
+
+    private final TinyLfuAdmission admission;
+
+    public TinyLfuEvictionPolicy(TinyLfuAdmission admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public int compare(EntryView entryView1, EntryView entryView2) {
+        return admission.compare(entryView1.getKey(), entryView1.getLastAccessTime(),
+                entryView2.getKey(), entryView2.getLastAccessTime());
+    }
+}
@@ -0,0 +1,276 @@
+import com.hazelcast.spi.eviction.EvictableEntryView;
+import com.hazelcast.spi.eviction.EvictionPolicyComparator;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays a trace of key accesses against caches of the same capacity and
+ * prints their hit ratios: an exact LRU cache, a W-TinyLFU cache, whose small
+ * LRU window hands its victims to the {@link TinyLfuAdmission} of the main
+ * LRU cache, and caches which evict by sampling as {@code IMap} and the Near
+ * Cache do, with an LRU comparator and with the shipped
+ * {@code TinyLfuNearCacheComparator}. Only the sampled caches replay what a
+ * map or Near Cache does; the W-TinyLFU cache shows what an admission filter
+ * would add.
+ * <p>
+ * Give a file with one key per line and the capacity as arguments, or
+ * nothing to generate a trace of five days, each of skewed reads followed by
+ * a nightly batch which reads twice as many other keys as the cache holds once.
+ */
+public class TinyLfuTraceReplay {
+
+    private static final int SAMPLE_SIZE = 15;
+
+    public static void main(String[] args) throws IOException {
+        long[] trace;
+        int capacity;
+        if (args.length >= 2) {
+            trace = readTrace(args[0]);
+            capacity = Integer.parseInt(args[1]);
+        } else {
+            capacity = 10000;
+            trace = generateTrace(capacity, 5);
+        }
+        System.out.printf("%,d accesses, capacity %,d%n", trace.length, capacity);
+
+        EvictionPolicyComparator<Object, Object, EvictableEntryView<Object, Object>> lru
+                = new EvictionPolicyComparator<Object, Object, EvictableEntryView<Object, Object>>() {
+            @Override
+            public int compare(EvictableEntryView<Object, Object> entry1, EvictableEntryView<Object, Object> entry2) {
+                return Long.compare(entry1.getLastAccessTime(), entry2.getLastAccessTime());
+            }
+        };
+        TinyLfuAdmission sampledAdmission = new TinyLfuAdmission(capacity);
+
+        replay("LRU", trace, new LruCache(capacity), null);
+        replay("W-TinyLFU", trace, new WindowTinyLfuCache(capacity), null);
+        replay("sampled LRU", trace, new SampledCache(capacity, lru), null);
+        replay("sampled TinyLFU", trace,
+                new SampledCache(capacity, new TinyLfuNearCacheComparator(sampledAdmission)), sampledAdmission);
+    }
+
+    private static void replay(String name, long[] trace, Cache cache, TinyLfuAdmission admission) {
+        long hits = 0;
+        for (int i = 0; i < trace.length; i++) {
+            if (admission != null) {
+                admission.recordAccess(trace[i]);
+            }
+            if (cache.access(trace[i], i)) {
+                hits++;
+            }
+        }
+        System.out.printf("%-16s: hit ratio %.4f%n", name, hits / (double) trace.length);
+    }
+
+    private static long[] generateTrace(int capacity, int days) {
+        Random random = new Random(42);
+        int dayAccesses = capacity * 20;
+        int dayKeys = capacity * 10;
+        int batchAccesses = capacity * 2;
+        long[] trace = new long[days * (dayAccesses + batchAccesses)];
+        long nextBatchKey = dayKeys;
+        int i = 0;
+        for (int day = 0; day < days; day++) {
+            for (int j = 0; j < dayAccesses; j++) {
+                double r = random.nextDouble();
+                trace[i++] = (long) (dayKeys * r * r * r);
+            }
+            for (int j = 0; j < batchAccesses; j++) {
+                trace[i++] = nextBatchKey++;
+            }
+        }
+        return trace;
+    }
+
+    private static long[] readTrace(String fileName) throws IOException {
+        List<Long> keys = new ArrayList<Long>();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    keys.add(Long.parseLong(line.trim()));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        long[] trace = new long[keys.size()];
+        for (int i = 0; i < trace.length; i++) {
+            trace[i] = keys.get(i);
+        }
+        return trace;
+    }
+
+    private interface Cache {
+        /**
+         * @return {@code true} on a hit
+         */
+        boolean access(long key, long time);
+    }
+
+    private static final class LruCache implements Cache {
+
+        private final int capacity;
+        private final LinkedHashMap<Long, Boolean> entries = new LinkedHashMap<Long, Boolean>(16, 0.75f, true);
+
+        LruCache(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean access(long key, long time) {
+            if (entries.get(key) != null) {
+                return true;
+            }
+            entries.put(key, Boolean.TRUE);
+            if (entries.size() > capacity) {
+                removeEldest(entries);
+            }
+            return false;
+        }
+    }
+
+    private static final class WindowTinyLfuCache implements Cache {
+
+        private final int windowCapacity;
+        private final int mainCapacity;
+        private final TinyLfuAdmission admission;
+        private final LinkedHashMap<Long, Boolean> window = new LinkedHashMap<Long, Boolean>(16, 0.75f, true);
+        private final LinkedHashMap<Long, Boolean> main = new LinkedHashMap<Long, Boolean>(16, 0.75f, true);
+
+        WindowTinyLfuCache(int capacity) {
+            // a window of 1% of the cache catches bursts of new keys
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = capacity - windowCapacity;
+            this.admission = new TinyLfuAdmission(capacity);
+        }
+
+        @Override
+        public boolean access(long key, long time) {
+            admission.recordAccess(key);
+            if (window.get(key) != null || main.get(key) != null) {
+                return true;
+            }
+            window.put(key, Boolean.TRUE);
+            if (window.size() > windowCapacity) {
+                Long candidate = removeEldest(window);
+                if (main.size() < mainCapacity) {
+                    main.put(candidate, Boolean.TRUE);
+                } else {
+                    Long victim = main.keySet().iterator().next();
+                    if (admission.admit(candidate, victim)) {
+                        main.remove(victim);
+                        main.put(candidate, Boolean.TRUE);
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class SampledCache implements Cache {
+
+        private final int capacity;
+        private final EvictionPolicyComparator<Object, Object, EvictableEntryView<Object, Object>> comparator;
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private final Map<Long, Entry> index = new HashMap<Long, Entry>();
+        private final Random random = new Random(7);
+
+        SampledCache(int capacity,
+                     EvictionPolicyComparator<Object, Object, EvictableEntryView<Object, Object>> comparator) {
+            this.capacity = capacity;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public boolean access(long key, long time) {
+            Entry entry = index.get(key);
+            if (entry != null) {
+                entry.lastAccessTime = time;
+                entry.hits++;
+                return true;
+            }
+            entry = new Entry(key, time);
+            entry.slot = entries.size();
+            entries.add(entry);
+            index.put(key, entry);
+            if (entries.size() > capacity) {
+                evict();
+            }
+            return false;
+        }
+
+        private void evict() {
+            Entry victim = entries.get(random.nextInt(entries.size()));
+            for (int i = 1; i < SAMPLE_SIZE; i++) {
+                Entry sampled = entries.get(random.nextInt(entries.size()));
+                if (comparator.compare(sampled, victim) < 0) {
+                    victim = sampled;
+                }
+            }
+            Entry last = entries.remove(entries.size() - 1);
+            if (last != victim) {
+                last.slot = victim.slot;
+                entries.set(victim.slot, last);
+            }
+            index.remove(victim.key);
+        }
+    }
+
+    private static final class Entry implements EvictableEntryView<Object, Object> {
+
+        private final long key;
+        private final long creationTime;
+        long lastAccessTime;
+        long hits;
+        int slot;
+
+        Entry(long key, long time) {
+            this.key = key;
+            this.creationTime = time;
+            this.lastAccessTime = time;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return null;
+        }
+
+        @Override
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        @Override
+        public long getLastAccessTime() {
+            return lastAccessTime;
+        }
+
+        @Override
+        public long getHits() {
+            return hits;
+        }
+    }
+
+    private static Long removeEldest(LinkedHashMap<Long, Boolean> entries) {
+        Iterator<Long> iterator = entries.keySet().iterator();
+        Long eldest = iterator.next();
+        iterator.remove();
+        return eldest;
+    }
+}
@@ -0,0 +1,127 @@
+import com.hazelcast.config.Config;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the optimistic update loop of {@link OptimisticMember}, which
+ * replaces by comparing the whole old value, with {@link VersionedMap}, for
+ * values of 1 KB, 64 KB and 512 KB updated by several threads on a
+ * cluster of two members.
+ */
+public class VersionedCasBenchmark {
+
+    private static final int THREADS = 4;
+    private static final int KEYS = 8;
+    private static final long DURATION_SECONDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Config config = new Config();
+        config.getMapConfig("versioned").setInMemoryFormat(InMemoryFormat.OBJECT);
+        HazelcastInstance hz = Hazelcast.newHazelcastInstance(config);
+        Hazelcast.newHazelcastInstance(config);
+        try {
+            for (int size : new int[]{1024, 64 * 1024, 512 * 1024}) {
+                runEqualityReplace(hz.<Integer, Document>getMap("equality"), size);
+                runVersioned(new VersionedMap<Integer, Document>(hz.<Integer, VersionedValue<Document>>getMap("versioned")),
+                        size);
+            }
+        } finally {
+            Hazelcast.shutdownAll();
+        }
+    }
+
+    private static void runEqualityReplace(final IMap<Integer, Document> map, int size) throws InterruptedException {
+        for (int key = 0; key < KEYS; key++) {
+            map.put(key, new Document(size));
+        }
+        final AtomicLong failedAttempts = new AtomicLong();
+        long updates = DeadlineThreads.run(THREADS, DURATION_SECONDS, new DeadlineThreads.Task() {
+            @Override
+            public void run(int thread, long iteration) {
+                int key = keyOf(thread, iteration);
+                for (; ; ) {
+                    Document oldValue = map.get(key);
+                    if (map.replace(key, oldValue, oldValue.increment())) {
+                        return;
+                    }
+                    failedAttempts.incrementAndGet();
+                }
+            }
+        });
+        report("replace(key, old, new)", size, updates, failedAttempts.get());
+    }
+
+    private static void runVersioned(VersionedMap<Integer, Document> map, int size) throws InterruptedException {
+        for (int key = 0; key < KEYS; key++) {
+            map.put(key, new Document(size));
+        }
+        final VersionedMap<Integer, Document> versionedMap = map;
+        final long failedBefore = map.getFailedAttempts();
+        long updates = DeadlineThreads.run(THREADS, DURATION_SECONDS, new DeadlineThreads.Task() {
+            @Override
+            public void run(int thread, long iteration) {
+                versionedMap.update(keyOf(thread, iteration), new VersionedMap.Updater<Document>() {
+                    @Override
+                    public Document apply(Document current) {
+                        return current.increment();
+                    }
+                });
+            }
+        });
+        report("replaceIfVersion(key, version, new)", size, updates, map.getFailedAttempts() - failedBefore);
+    }
+
+    /**
+     * @return the key of the iteration, so the threads start on different keys and go through all of them
+     */
+    private static int keyOf(int thread, long iteration) {
+        return (int) ((thread + iteration) % KEYS);
+    }
+
+    private static void report(String name, int size, long updates, long failedAttempts) {
+        System.out.printf("%-36s %4d KB: %,8.0f updates/s, %,d failed attempts (%.1f%% of attempts)%n",
+                name, size / 1024, updates / (double) DURATION_SECONDS, failedAttempts,
+                100.0 * failedAttempts / (updates + failedAttempts));
+    }
+
+    static class Document implements Serializable {
+        final byte[] payload;
+        final long counter;
+
+        Document(int size) {
+            this(new byte[size], 0);
+        }
+
+        Document(byte[] payload, long counter) {
+            this.payload = payload;
+            this.counter = counter;
+        }
+
+        Document increment() {
+            return new Document(payload, counter + 1);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Document)) {
+                return false;
+            }
+            Document that = (Document) o;
+            return that.counter == counter && Arrays.equals(that.payload, payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) counter;
+        }
+    }
+}
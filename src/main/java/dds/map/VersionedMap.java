@@ -0,0 +1,182 @@
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.IMap;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optimistic updates of map values by version instead of by value.
+ * <p>
+ * {@code IMap.replace(key, oldValue, newValue)} sends the old value along with
+ * the new one and compares the whole value. This class stores each value in
+ * a {@link VersionedValue} and {@link #replaceIfVersion} runs an entry
+ * processor on the key owner which compares only the version and stores the
+ * new value with the next version. With the {@code BINARY} in-memory format
+ * the entry processor deserializes the stored value, so configure the map
+ * with the {@code OBJECT} in-memory format.
+ * <p>
+ * {@link #update} retries a failed replace with an exponential backoff with
+ * jitter. The counters tell how often the replaces failed, i.e. how contended
+ * the keys are.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class VersionedMap<K, V> {
+
+    /**
+     * Computes the new value from the current one, or from {@code null} if the
+     * key is absent. It may be called several times for one update, so it must
+     * not modify the current value.
+     */
+    public interface Updater<V> {
+        V apply(V current);
+    }
+
+    private final IMap<K, VersionedValue<V>> map;
+    private final long minBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int maxAttempts;
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong backoffNanos = new AtomicLong();
+
+    public VersionedMap(IMap<K, VersionedValue<V>> map) {
+        this(map, 10, 10000, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param minBackoffMicros the longest backoff after the first failed attempt
+     * @param maxBackoffMicros the longest backoff after any failed attempt
+     * @param maxAttempts      the attempts after which {@link #update} gives up
+     */
+    public VersionedMap(IMap<K, VersionedValue<V>> map, long minBackoffMicros, long maxBackoffMicros,
+                        int maxAttempts) {
+        if (minBackoffMicros < 1 || maxBackoffMicros < minBackoffMicros || maxAttempts < 1) {
+            throw new IllegalArgumentException("the backoffs must be positive and ordered and maxAttempts positive");
+        }
+        this.map = map;
+        this.minBackoffNanos = TimeUnit.MICROSECONDS.toNanos(minBackoffMicros);
+        this.maxBackoffNanos = TimeUnit.MICROSECONDS.toNanos(maxBackoffMicros);
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return the value with its version, or {@code null} if the key is absent
+     */
+    public VersionedValue<V> getWithVersion(K key) {
+        return map.get(key);
+    }
+
+    /**
+     * Stores the value unconditionally with the next version.
+     *
+     * @return the new version
+     */
+    public long put(K key, V value) {
+        return map.executeOnKey(key, new PutProcessor<K, V>(value));
+    }
+
+    /**
+     * Stores the new value if the key's version is still the given one.
+     *
+     * @return {@code true} if the value was replaced
+     */
+    public boolean replaceIfVersion(K key, long version, V newValue) {
+        attempts.incrementAndGet();
+        boolean replaced = map.executeOnKey(key, new ReplaceIfVersionProcessor<K, V>(version, newValue));
+        if (!replaced) {
+            failedAttempts.incrementAndGet();
+        }
+        return replaced;
+    }
+
+    /**
+     * Reads the value, applies the updater and replaces the value if no one
+     * else has updated it in the meantime, otherwise backs off and tries again.
+     *
+     * @return the new value
+     * @throws RuntimeException if the value could not be replaced in {@code maxAttempts} attempts
+     */
+    public V update(K key, Updater<V> updater) {
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            VersionedValue<V> current = map.get(key);
+            V newValue = updater.apply(current == null ? null : current.getValue());
+            if (current == null) {
+                attempts.incrementAndGet();
+                if (map.putIfAbsent(key, new VersionedValue<V>(newValue, 1)) == null) {
+                    return newValue;
+                }
+                failedAttempts.incrementAndGet();
+            } else if (replaceIfVersion(key, current.getVersion(), newValue)) {
+                return newValue;
+            }
+            backoff(attempt);
+        }
+        throw new RuntimeException("Could not update " + key + " in " + maxAttempts + " attempts");
+    }
+
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    public long getFailedAttempts() {
+        return failedAttempts.get();
+    }
+
+    /**
+     * @return the total time spent backing off, in nanoseconds
+     */
+    public long getBackoffNanos() {
+        return backoffNanos.get();
+    }
+
+    private void backoff(int attempt) {
+        // a random backoff up to a doubling limit spreads out the competing updaters
+        long limit = minBackoffNanos << Math.min(attempt, 20);
+        long nanos = ThreadLocalRandom.current().nextLong(Math.min(limit, maxBackoffNanos) + 1);
+        backoffNanos.addAndGet(nanos);
+        LockSupport.parkNanos(nanos);
+    }
+
+    private static class PutProcessor<K, V> implements EntryProcessor<K, VersionedValue<V>, Long> {
+
+        private final V value;
+
+        PutProcessor(V value) {
+            this.value = value;
+        }
+
+        @Override
+        public Long process(Map.Entry<K, VersionedValue<V>> entry) {
+            VersionedValue<V> current = entry.getValue();
+            long version = current == null ? 1 : current.getVersion() + 1;
+            entry.setValue(new VersionedValue<V>(value, version));
+            return version;
+        }
+    }
+
+    private static class ReplaceIfVersionProcessor<K, V> implements EntryProcessor<K, VersionedValue<V>, Boolean> {
+
+        private final long version;
+        private final V newValue;
+
+        ReplaceIfVersionProcessor(long version, V newValue) {
+            this.version = version;
+            this.newValue = newValue;
+        }
+
+        @Override
+        public Boolean process(Map.Entry<K, VersionedValue<V>> entry) {
+            VersionedValue<V> current = entry.getValue();
+            if (current == null || current.getVersion() != version) {
+                return false;
+            }
+            entry.setValue(new VersionedValue<V>(newValue, version + 1));
+            return true;
+        }
+    }
+}
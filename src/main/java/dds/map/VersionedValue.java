@@ -0,0 +1,31 @@
+import java.io.Serializable;
+
+/**
+ * A map value stamped with the version of its last update, as stored by a
+ * {@link VersionedMap}.
+ *
+ * @param <V> the value type
+ */
+public class VersionedValue<V> implements Serializable {
+
+    private final V value;
+    private final long version;
+
+    public VersionedValue(V value, long version) {
+        this.value = value;
+        this.version = version;
+    }
+
+    public V getValue() {
+        return value;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "VersionedValue{value=" + value + ", version=" + version + '}';
+    }
+}
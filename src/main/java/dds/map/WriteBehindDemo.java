@@ -0,0 +1,64 @@
+import com.hazelcast.config.Config;
+import com.hazelcast.config.MapStoreConfig;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows {@link WriteBehindMapStore} coalescing the writes to a skewed key set
+ * in front of {@link PersonMapStore}, which runs against an in-memory HSQLDB.
+ */
+public class WriteBehindDemo {
+
+    private static final int THREADS = 8;
+    private static final int WRITES_PER_THREAD = 100000;
+    private static final int KEYS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        PersonMapStore personStore = new PersonMapStore("jdbc:hsqldb:mem:writebehind", 4, 1000);
+        final WriteBehindMapStore<Long, Person> store = new WriteBehindMapStore<Long, Person>(
+                personStore, 1000, 200, 50000, 4);
+
+        long start = System.nanoTime();
+        ExecutorService writers = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            writers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                        // a quarter of the keys receives most of the writes
+                        long id = random.nextInt(4) == 0 ? random.nextInt(KEYS) : random.nextInt(KEYS / 4);
+                        store.store(id, new Person(id, "name-" + i));
+                    }
+                }
+            });
+        }
+        writers.shutdown();
+        writers.awaitTermination(5, TimeUnit.MINUTES);
+        store.flushAll();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.printf("# %d writes in %d ms%n", THREADS * WRITES_PER_THREAD, millis);
+        System.out.println("# " + store.getStats());
+        System.out.println("# " + personStore.getWriteStats());
+        store.destroy();
+    }
+
+    static Config createConfig(String mapName) {
+        //tag::wbms[]
+        MapStoreConfig mapStoreConfig = new MapStoreConfig()
+                // a queue per partition, flushed at 1000 keys or after 1000 ms
+                .setImplementation(new WriteBehindMapStore<Long, Person>(new PersonMapStore(),
+                        1000, 1000, 100000, 4))
+                // the decorator does the write-behind, so the map calls it synchronously
+                .setWriteDelaySeconds(0);
+
+        Config config = new Config();
+        config.getMapConfig(mapName).setMapStoreConfig(mapStoreConfig);
+        //end::wbms[]
+        return config;
+    }
+}
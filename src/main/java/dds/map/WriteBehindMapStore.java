@@ -0,0 +1,439 @@
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.map.MapLoaderLifecycleSupport;
+import com.hazelcast.map.MapStore;
+import com.hazelcast.partition.MigrationListener;
+import com.hazelcast.partition.MigrationState;
+import com.hazelcast.partition.PartitionService;
+import com.hazelcast.partition.ReplicaMigrationEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A write-behind decorator for any {@link MapStore}.
+ * <p>
+ * {@code store} and {@code delete} calls only put the key into the pending
+ * queue of its partition and return. A queue keeps at most one pending operation per key, so repeated
+ * writes to the same key are coalesced into the last one. A queue is flushed
+ * to the delegate with a single {@code storeAll} and {@code deleteAll} when it
+ * holds {@code flushSize} keys or when its oldest write is
+ * {@code maxDelayMillis} old, whichever comes first. The flushes of a queue
+ * are serialized, so a key is never written out of order.
+ * <p>
+ * At most {@code maxPendingEntries} keys are pending over all queues. When the
+ * bound is reached, writers block until a flush frees space. A failed flush
+ * is put back into its queue, unless the keys have been written again in the
+ * meantime. The queue is not flushed again before a backoff, which starts at
+ * a quarter of {@code maxDelayMillis} and doubles with every failed flush in a
+ * row, up to {@code MAX_BACKOFF_MILLIS}, so a failing data store is not
+ * hammered with retries. {@link #flushAll()} ignores the backoff.
+ * <p>
+ * Loads first look at the pending and in-flight writes, so a {@code load}
+ * returns what has been stored before even if it has not reached the delegate yet.
+ * <p>
+ * The queues are keyed by the partition id from the {@code HazelcastInstance}
+ * passed to {@link #init}. When a partition migrates away from this member,
+ * its queue is flushed right away, ignoring the size and age limits, so the
+ * writes of the old and the new owner of a key overlap only for the duration
+ * of that flush; {@link #flushPartition} flushes a single partition on demand.
+ * Used without a map, before {@code init}, the keys are spread by their hash
+ * over {@code DEFAULT_PARTITION_COUNT} queues.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+@SuppressWarnings("unchecked")
+public class WriteBehindMapStore<K, V> implements MapStore<K, V>, MapLoaderLifecycleSupport {
+
+    private static final ILogger LOGGER = Logger.getLogger(WriteBehindMapStore.class);
+    private static final Object DELETED = new Object();
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    private static final int DEFAULT_PARTITION_COUNT = 271;
+
+    private final MapStore<K, V> delegate;
+    private volatile List<PendingQueue> queues;
+    private volatile PartitionService partitionService;
+    private UUID migrationListenerId;
+    private final int flushSize;
+    private final long maxDelayNanos;
+    private final long retryNanos;
+    private final Semaphore capacity;
+    private final ScheduledExecutorService flusher;
+    private final WriteBehindStats stats = new WriteBehindStats();
+
+    public WriteBehindMapStore(MapStore<K, V> delegate, int flushSize, long maxDelayMillis,
+                               int maxPendingEntries, int flushThreads) {
+        if (flushSize < 1 || maxDelayMillis < 1 || maxPendingEntries < flushSize) {
+            throw new IllegalArgumentException("flushSize and maxDelayMillis must be positive and "
+                    + "maxPendingEntries must not be smaller than flushSize");
+        }
+        this.delegate = delegate;
+        this.flushSize = flushSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.capacity = new Semaphore(maxPendingEntries);
+        this.queues = newQueues(DEFAULT_PARTITION_COUNT);
+        this.flusher = Executors.newScheduledThreadPool(flushThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "write-behind-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long tick = Math.max(1, maxDelayMillis / 4);
+        this.retryNanos = TimeUnit.MILLISECONDS.toNanos(tick);
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushExpired();
+            }
+        }, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    public WriteBehindStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void init(HazelcastInstance hazelcastInstance, Properties properties, String mapName) {
+        if (delegate instanceof MapLoaderLifecycleSupport) {
+            ((MapLoaderLifecycleSupport) delegate).init(hazelcastInstance, properties, mapName);
+        }
+        // the writes made before, keyed by hash, must not overtake the ones keyed by partition
+        flushAll();
+        PartitionService partitions = hazelcastInstance.getPartitionService();
+        queues = newQueues(partitions.getPartitions().size());
+        partitionService = partitions;
+        migrationListenerId = partitions.addMigrationListener(new MigrationListener() {
+            @Override
+            public void migrationStarted(MigrationState state) {
+            }
+
+            @Override
+            public void migrationFinished(MigrationState state) {
+            }
+
+            @Override
+            public void replicaMigrationCompleted(ReplicaMigrationEvent event) {
+                if (event.getReplicaIndex() == 0 && event.getSource() != null && event.getSource().localMember()) {
+                    queues.get(event.getPartitionId()).scheduleFlush(true);
+                }
+            }
+
+            @Override
+            public void replicaMigrationFailed(ReplicaMigrationEvent event) {
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        PartitionService partitions = partitionService;
+        if (partitions != null) {
+            partitions.removeMigrationListener(migrationListenerId);
+        }
+        flusher.shutdownNow();
+        flushAll();
+        if (delegate instanceof MapLoaderLifecycleSupport) {
+            ((MapLoaderLifecycleSupport) delegate).destroy();
+        }
+    }
+
+    @Override
+    public void store(K key, V value) {
+        enqueue(key, value);
+    }
+
+    @Override
+    public void storeAll(Map<K, V> map) {
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            enqueue(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void delete(K key) {
+        enqueue(key, DELETED);
+    }
+
+    @Override
+    public void deleteAll(Collection<K> keys) {
+        for (K key : keys) {
+            enqueue(key, DELETED);
+        }
+    }
+
+    @Override
+    public V load(K key) {
+        Object pending = queueOf(key).pendingValue(key);
+        if (pending != null) {
+            return pending == DELETED ? null : (V) pending;
+        }
+        return delegate.load(key);
+    }
+
+    @Override
+    public Map<K, V> loadAll(Collection<K> keys) {
+        Map<K, V> result = new HashMap<K, V>();
+        List<K> missing = new ArrayList<K>(keys.size());
+        for (K key : keys) {
+            Object pending = queueOf(key).pendingValue(key);
+            if (pending == null) {
+                missing.add(key);
+            } else if (pending != DELETED) {
+                result.put(key, (V) pending);
+            }
+        }
+        if (!missing.isEmpty()) {
+            result.putAll(delegate.loadAll(missing));
+        }
+        return result;
+    }
+
+    @Override
+    public Iterable<K> loadAllKeys() {
+        // the delegate knows only the keys which have been flushed
+        flushAll();
+        return delegate.loadAllKeys();
+    }
+
+    /**
+     * Synchronously writes all pending entries to the delegate.
+     */
+    public void flushAll() {
+        for (PendingQueue queue : queues) {
+            queue.flush();
+        }
+    }
+
+    /**
+     * Synchronously writes the pending entries of a partition to the delegate.
+     */
+    public void flushPartition(int partitionId) {
+        queues.get(partitionId).flush();
+    }
+
+    private void enqueue(K key, Object value) {
+        if (!capacity.tryAcquire()) {
+            stats.recordBackpressureWait();
+            for (PendingQueue queue : queues) {
+                queue.scheduleFlush(false);
+            }
+            try {
+                capacity.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        PendingQueue queue = queueOf(key);
+        boolean newEntry = queue.put(key, value);
+        if (!newEntry) {
+            // coalesced into an already pending write, which holds the capacity
+            capacity.release();
+        }
+        stats.recordWrite(newEntry);
+    }
+
+    private PendingQueue queueOf(K key) {
+        PartitionService partitions = partitionService;
+        if (partitions == null) {
+            return queues.get((key.hashCode() & Integer.MAX_VALUE) % queues.size());
+        }
+        return queues.get(partitions.getPartition(key).getPartitionId());
+    }
+
+    private List<PendingQueue> newQueues(int count) {
+        List<PendingQueue> created = new ArrayList<PendingQueue>(count);
+        for (int i = 0; i < count; i++) {
+            created.add(new PendingQueue());
+        }
+        return created;
+    }
+
+    private void flushExpired() {
+        long now = System.nanoTime();
+        for (PendingQueue queue : queues) {
+            if (queue.isExpired(now)) {
+                queue.scheduleFlush(false);
+            }
+        }
+    }
+
+    private final class PendingQueue {
+
+        private final ReentrantLock flushLock = new ReentrantLock();
+        // guarded by this
+        private Map<K, Object> pending = new LinkedHashMap<K, Object>();
+        private Map<K, Object> inFlight = Collections.emptyMap();
+        private long oldestWriteNanos;
+        private boolean flushScheduled;
+        private int failedFlushes;
+        private long retryAtNanos;
+
+        /**
+         * @return {@code true} if the key was not pending yet
+         */
+        boolean put(K key, Object value) {
+            boolean schedule = false;
+            boolean newEntry;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    oldestWriteNanos = System.nanoTime();
+                }
+                newEntry = pending.put(key, value) == null;
+                if (pending.size() >= flushSize && !flushScheduled && !isBackingOff(System.nanoTime())) {
+                    flushScheduled = true;
+                    schedule = true;
+                }
+            }
+            if (schedule) {
+                submitFlush();
+            }
+            return newEntry;
+        }
+
+        synchronized Object pendingValue(K key) {
+            Object value = pending.get(key);
+            return value != null ? value : inFlight.get(key);
+        }
+
+        synchronized boolean isExpired(long now) {
+            return !pending.isEmpty() && !flushScheduled && now - oldestWriteNanos >= maxDelayNanos
+                    && !isBackingOff(now);
+        }
+
+        // guarded by this
+        private boolean isBackingOff(long now) {
+            return failedFlushes > 0 && now - retryAtNanos < 0;
+        }
+
+        /**
+         * @param ignoreBackoff whether to flush even if the last flush failed
+         *                      less than the backoff ago
+         */
+        void scheduleFlush(boolean ignoreBackoff) {
+            synchronized (this) {
+                if (pending.isEmpty() || flushScheduled || !ignoreBackoff && isBackingOff(System.nanoTime())) {
+                    return;
+                }
+                flushScheduled = true;
+            }
+            submitFlush();
+        }
+
+        private void submitFlush() {
+            try {
+                flusher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // the flusher is shut down, destroy() flushes synchronously
+                synchronized (this) {
+                    flushScheduled = false;
+                }
+            }
+        }
+
+        void flush() {
+            flushLock.lock();
+            try {
+                Map<K, Object> batch;
+                long batchOldestWriteNanos;
+                synchronized (this) {
+                    flushScheduled = false;
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    batch = pending;
+                    batchOldestWriteNanos = oldestWriteNanos;
+                    pending = new LinkedHashMap<K, Object>();
+                    inFlight = batch;
+                }
+                try {
+                    write(batch);
+                    capacity.release(batch.size());
+                    stats.recordDequeued(batch.size());
+                    synchronized (this) {
+                        failedFlushes = 0;
+                    }
+                } catch (RuntimeException e) {
+                    stats.recordFailedFlush();
+                    long backoffNanos = requeue(batch, batchOldestWriteNanos);
+                    LOGGER.warning("Write-behind flush of " + batch.size() + " entries failed, the entries are "
+                            + "retried in " + TimeUnit.NANOSECONDS.toMillis(backoffNanos) + " ms", e);
+                } finally {
+                    synchronized (this) {
+                        inFlight = Collections.emptyMap();
+                    }
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        private void write(Map<K, Object> batch) {
+            Map<K, V> stores = new HashMap<K, V>();
+            List<K> deletes = new ArrayList<K>();
+            for (Map.Entry<K, Object> entry : batch.entrySet()) {
+                if (entry.getValue() == DELETED) {
+                    deletes.add(entry.getKey());
+                } else {
+                    stores.put(entry.getKey(), (V) entry.getValue());
+                }
+            }
+            long start = System.nanoTime();
+            if (!stores.isEmpty()) {
+                delegate.storeAll(stores);
+            }
+            if (!deletes.isEmpty()) {
+                delegate.deleteAll(deletes);
+            }
+            stats.recordFlush(batch.size(), System.nanoTime() - start);
+        }
+
+        /**
+         * @return the backoff before the next flush of this queue
+         */
+        private long requeue(Map<K, Object> batch, long batchOldestWriteNanos) {
+            int superseded = 0;
+            long backoffNanos;
+            synchronized (this) {
+                Map<K, Object> merged = new LinkedHashMap<K, Object>(batch);
+                for (Map.Entry<K, Object> entry : pending.entrySet()) {
+                    if (merged.put(entry.getKey(), entry.getValue()) != null) {
+                        superseded++;
+                    }
+                }
+                pending = merged;
+                oldestWriteNanos = batchOldestWriteNanos;
+                failedFlushes++;
+                backoffNanos = Math.min(retryNanos << Math.min(failedFlushes - 1, 20),
+                        TimeUnit.MILLISECONDS.toNanos(MAX_BACKOFF_MILLIS));
+                retryAtNanos = System.nanoTime() + backoffNanos;
+            }
+            // a key written again while the batch was in flight holds the capacity twice
+            capacity.release(superseded);
+            stats.recordDequeued(superseded);
+            return backoffNanos;
+        }
+    }
+}
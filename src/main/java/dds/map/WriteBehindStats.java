@@ -0,0 +1,101 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queue depth, coalescing and flush latency counters of {@link WriteBehindMapStore}.
+ */
+public class WriteBehindStats {
+
+    private final LongAdder queueDepth = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder flushedEntries = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final LongAdder backpressureWaits = new LongAdder();
+
+    void recordWrite(boolean newEntry) {
+        writes.increment();
+        if (newEntry) {
+            queueDepth.increment();
+        }
+    }
+
+    void recordDequeued(int entries) {
+        queueDepth.add(-entries);
+    }
+
+    void recordFlush(int entries, long nanos) {
+        flushes.increment();
+        flushedEntries.add(entries);
+        flushNanos.add(nanos);
+        maxFlushNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    void recordFailedFlush() {
+        failedFlushes.increment();
+    }
+
+    void recordBackpressureWait() {
+        backpressureWaits.increment();
+    }
+
+    /**
+     * @return the number of keys waiting to be written
+     */
+    public long getQueueDepth() {
+        return queueDepth.sum();
+    }
+
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    public long getFlushedEntries() {
+        return flushedEntries.sum();
+    }
+
+    /**
+     * @return the number of writes received per entry written to the delegate;
+     * {@code 1} means that no write has been coalesced
+     */
+    public double getCoalescingRatio() {
+        long flushed = flushedEntries.sum();
+        return flushed == 0 ? 0 : writes.sum() / (double) flushed;
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    public double getAverageFlushMillis() {
+        long count = flushes.sum();
+        return count == 0 ? 0 : flushNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxFlushMillis() {
+        return maxFlushNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return how many writes had to wait because the queue was full
+     */
+    public long getBackpressureWaits() {
+        return backpressureWaits.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteBehindStats{queueDepth=%d, writes=%d, flushedEntries=%d, coalescingRatio=%.2f,"
+                        + " flushes=%d, failedFlushes=%d, avgFlushMillis=%.2f, maxFlushMillis=%.2f,"
+                        + " backpressureWaits=%d}",
+                getQueueDepth(), getWrites(), getFlushedEntries(), getCoalescingRatio(), getFlushes(),
+                getFailedFlushes(), getAverageFlushMillis(), getMaxFlushMillis(), getBackpressureWaits());
+    }
+}
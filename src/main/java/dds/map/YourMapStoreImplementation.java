@@ -3,28 +3,32 @@ import com.hazelcast.map.MapLoaderLifecycleSupport;
 import com.hazelcast.map.MapStore;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
-import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.model.BulkWriteOptions;
-import com.mongodb.client.model.InsertOneModel;
-import com.mongodb.client.model.Projections;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
 import org.bson.Document;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Projections.excludeId;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
 
 //tag::ymsi[]
 public class YourMapStoreImplementation implements MapStore<String, Supplement>, MapLoaderLifecycleSupport {
 
     private MongoClient mongoClient;
-    private MongoCollection collection;
+    private MongoCollection<Document> collection;
+    private MongoUpsertWriter writer;
+    private int batchSize;
 
     public YourMapStoreImplementation() {
     }
@@ -34,8 +38,11 @@ public class YourMapStoreImplementation implements MapStore<String, Supplement>,
         String mongoUrl = (String) properties.get("mongo.url");
         String dbName = (String) properties.get("mongo.db");
         String collectionName = (String) properties.get("mongo.collection");
+        this.batchSize = Integer.parseInt(properties.getProperty("mongo.batch.size", "1000"));
         this.mongoClient = new MongoClient(new MongoClientURI(mongoUrl));
-        this.collection = mongoClient.getDatabase(dbName).getCollection(collectionName);
+        MongoDatabase database = mongoClient.getDatabase(dbName);
+        this.collection = database.getCollection(collectionName);
+        this.writer = new MongoUpsertWriter(collection, MongoUpsertWriter.maxWriteBatchSize(database), 3);
     }
 //end::ymsi[]
     @Override
@@ -46,55 +53,74 @@ public class YourMapStoreImplementation implements MapStore<String, Supplement>,
     @Override
     public Supplement load(String key) {
         System.out.println("Load " + key);
-        Document document = (Document) collection.find(eq("_id", key)).first();
+        Document document = collection.find(eq("_id", key))
+                .projection(fields(include("name", "price"), excludeId())).first();
+        if (document == null) {
+            return null;
+        }
         String name = (String) document.get("name");
         Integer price = document.getInteger("price");
         return new Supplement(name, price);
     }
 
     @Override
-    public Map<String, Supplement> loadAll(Collection keys) {
-        System.out.println("LoadAll " + keys);
+    public Map<String, Supplement> loadAll(Collection<String> keys) {
+        System.out.println("LoadAll " + keys.size() + " keys");
         HashMap<String, Supplement> result = new HashMap<String, Supplement>();
-
-        FindIterable<Document> id = collection.find(in("_id", keys));
-        for (Document document : id) {
-            String name = (String) document.get("name");
-            Integer price = document.getInteger("price");
-            result.put(document.get("_id").toString(), new Supplement(name, price));
+        List<String> chunk = new ArrayList<String>(Math.min(batchSize, keys.size()));
+        for (String key : keys) {
+            chunk.add(key);
+            if (chunk.size() == batchSize) {
+                loadChunk(chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            loadChunk(chunk, result);
         }
         return result;
     }
 
+    private void loadChunk(List<String> keys, Map<String, Supplement> result) {
+        MongoCursor<Document> cursor = collection.find(in("_id", keys))
+                .projection(include("_id", "name", "price")).batchSize(batchSize).iterator();
+        try {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                String name = (String) document.get("name");
+                Integer price = document.getInteger("price");
+                result.put(document.get("_id").toString(), new Supplement(name, price));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
     public Iterable<String> loadAllKeys() {
         System.out.println("LoadAllKeys");
-        List<String> keys = new LinkedList<String>();
-        FindIterable<Document> ids = collection.find().projection(Projections.include("_id"));
-        for (Document document : ids) {
-            keys.add(document.get("_id").toString());
-        }
-        return keys;
+        return new MongoKeyIterable(collection, batchSize);
     }
 
     @Override
     public void store(String key, Supplement value) {
-        Document doc = new Document("name", value.getName()).append("price", value.getPrice()).append("_id", key);
-        this.collection.insertOne(doc);
-        //this.collection.replaceOne(doc, doc);
+        storeAll(Collections.singletonMap(key, value));
     }
 
     @Override
     public void storeAll(Map<String, Supplement> map) {
-        List<InsertOneModel> batch = new LinkedList<InsertOneModel>();
+        Map<String, Document> documents = new HashMap<String, Document>();
         for (Map.Entry<String, Supplement> entry : map.entrySet()) {
             String key = entry.getKey();
             Supplement value = entry.getValue();
-            batch.add(new InsertOneModel(
-                    new Document("name", value.getName()).append("price", value.getPrice())
-                            .append("_id", key)));
+            documents.put(key, new Document("name", value.getName()).append("price", value.getPrice())
+                    .append("_id", key));
         }
-        this.collection.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+        writer.upsertAll(documents);
+    }
+
+    public MongoWriteStats getWriteStats() {
+        return writer.getStats();
     }
 
     @Override
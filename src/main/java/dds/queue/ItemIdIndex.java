@@ -0,0 +1,135 @@
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from item ids to {@code long} locations, with
+ * linear probing and backward shift deletion. It uses 16 bytes per slot and
+ * no object per entry. Not thread-safe.
+ */
+class ItemIdIndex {
+
+    static final long MISSING = Long.MIN_VALUE;
+    // marks a free slot, so it cannot be used as an item id
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    ItemIdIndex() {
+        allocate(1024);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the location of the id, or {@link #MISSING}
+     */
+    long get(long id) {
+        int slot = slotOf(id);
+        return slot < 0 ? MISSING : values[slot];
+    }
+
+    /**
+     * @return the previous location of the id, or {@link #MISSING}
+     */
+    long put(long id, long location) {
+        if (id == FREE) {
+            throw new IllegalArgumentException("Item id " + id + " is not supported");
+        }
+        int slot = slotOf(id);
+        if (slot >= 0) {
+            long previous = values[slot];
+            values[slot] = location;
+            return previous;
+        }
+        if ((size + 1) * 4L > keys.length * 3L) {
+            resize();
+        }
+        insert(id, location);
+        size++;
+        return MISSING;
+    }
+
+    /**
+     * @return the location of the removed id, or {@link #MISSING}
+     */
+    long remove(long id) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return MISSING;
+        }
+        long removed = values[slot];
+        size--;
+        int mask = keys.length - 1;
+        int free = slot;
+        for (int next = (free + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+        }
+        keys[free] = FREE;
+        return removed;
+    }
+
+    /**
+     * Calls the visitor for each id, in no particular order.
+     */
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    private int slotOf(long id) {
+        int mask = keys.length - 1;
+        for (int slot = hash(id) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long id, long location) {
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        while (keys[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        values[slot] = location;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int slots) {
+        keys = new long[slots];
+        values = new long[slots];
+        Arrays.fill(keys, FREE);
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    interface Visitor {
+        void visit(long id, long location);
+    }
+}
@@ -0,0 +1,517 @@
+import com.hazelcast.collection.QueueStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A {@link QueueStore} which keeps the items in an append-only log of
+ * memory-mapped segment files in a local directory, so that a queue survives
+ * restarts without an external database.
+ * <p>
+ * Each segment consists of a data file, holding the serialized items as
+ * {@code [length][bytes]} records, and an index file of fixed-width
+ * {@code [item id][offset]} entries, one per record. {@code storeAll} appends
+ * all records of the batch to the data file and forces it to disk, and only
+ * then appends and forces their index entries, so an index entry never
+ * points to a record which has not been written. A delete negates the offset
+ * of the entry in place. A segment whose items have all been deleted is
+ * removed; after {@code deleteAll}, the remaining items of a segment with less
+ * than a quarter of its items alive are copied to the current segment so the
+ * old one can be removed.
+ * <p>
+ * On startup only the index files are read, 16 bytes per item, to rebuild
+ * the item ids and locations; the items themselves are read by {@code load}.
+ * {@code loadAllKeys} returns the ids in ascending order, which is the order
+ * Hazelcast offers them to the queue in. An instance must not be shared by
+ * several queues; see {@link MappedLogQueueStoreFactory}.
+ *
+ * @param <T> the item type, which must be serializable
+ */
+public class MappedLogQueueStore<T> implements QueueStore<T>, Closeable {
+
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 4;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int segmentEntries;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+    // item id -> segment id << 32 | entry number
+    private final ItemIdIndex index = new ItemIdIndex();
+    private Segment current;
+
+    public MappedLogQueueStore(File directory) {
+        this(directory, 64 * 1024 * 1024, 1024 * 1024);
+    }
+
+    /**
+     * @param segmentBytes   the size of the data file of a segment, which is also the maximum item size
+     * @param segmentEntries the maximum number of items in a segment
+     */
+    public MappedLogQueueStore(File directory, int segmentBytes, int segmentEntries) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segmentEntries = segmentEntries;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the directory " + directory);
+        }
+        recover();
+    }
+
+    @Override
+    public synchronized void store(Long key, T value) {
+        storeAll(Collections.singletonMap(key, value));
+    }
+
+    @Override
+    public synchronized void storeAll(Map<Long, T> map) {
+        List<Long> ids = new ArrayList<Long>(map.size());
+        List<byte[]> records = new ArrayList<byte[]>(map.size());
+        for (Map.Entry<Long, T> entry : map.entrySet()) {
+            ids.add(entry.getKey());
+            records.add(serialize(entry.getValue()));
+        }
+        append(ids, records);
+    }
+
+    @Override
+    public synchronized void delete(Long key) {
+        deleteAll(Collections.singletonList(key), false);
+    }
+
+    @Override
+    public synchronized void deleteAll(Collection<Long> keys) {
+        deleteAll(keys, true);
+    }
+
+    @Override
+    public synchronized T load(Long key) {
+        long location = index.get(key);
+        if (location == ItemIdIndex.MISSING) {
+            return null;
+        }
+        return deserialize(segments.get(segmentId(location)).read(entryNumber(location)));
+    }
+
+    @Override
+    public synchronized Map<Long, T> loadAll(Collection<Long> keys) {
+        Map<Long, T> result = new HashMap<Long, T>();
+        for (Long key : keys) {
+            T item = load(key);
+            if (item != null) {
+                result.put(key, item);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Set<Long> loadAllKeys() {
+        final long[] ids = new long[index.size()];
+        index.forEach(new ItemIdIndex.Visitor() {
+            private int i;
+
+            @Override
+            public void visit(long id, long location) {
+                ids[i++] = id;
+            }
+        });
+        Arrays.sort(ids);
+        return new SortedIdSet(ids);
+    }
+
+    /**
+     * @return the number of segments on disk
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        current = null;
+    }
+
+    private void append(List<Long> ids, List<byte[]> records) {
+        // reject the batch before anything is written, as recovery stops at the first unwritten index entry
+        for (int i = 0; i < records.size(); i++) {
+            if (records.get(i).length + RECORD_HEADER_BYTES > segmentBytes) {
+                throw new IllegalArgumentException("Item " + ids.get(i) + " of " + records.get(i).length
+                        + " bytes does not fit into a segment of " + segmentBytes + " bytes");
+            }
+        }
+        // the data of all records first, so no index entry can point to a record not on disk
+        Set<Segment> touched = new LinkedHashSet<Segment>();
+        Map<Segment, int[]> startEnds = new HashMap<Segment, int[]>();
+        int[] entryNumbers = new int[records.size()];
+        int[] offsets = new int[records.size()];
+        List<Segment> targets = new ArrayList<Segment>(records.size());
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                byte[] record = records.get(i);
+                if (current == null || !current.fits(record.length)) {
+                    current = createSegment(segments.isEmpty() ? 0 : segments.lastKey() + 1);
+                }
+                if (!startEnds.containsKey(current)) {
+                    startEnds.put(current, new int[]{current.entries, current.dataEnd});
+                }
+                targets.add(current);
+                entryNumbers[i] = current.entries;
+                offsets[i] = current.appendData(record);
+                touched.add(current);
+            }
+        } catch (RuntimeException e) {
+            // release the reserved index entries, so later appends do not leave a gap behind them
+            for (Map.Entry<Segment, int[]> startEnd : startEnds.entrySet()) {
+                startEnd.getKey().entries = startEnd.getValue()[0];
+                startEnd.getKey().dataEnd = startEnd.getValue()[1];
+            }
+            throw e;
+        }
+        for (Segment segment : touched) {
+            segment.data.force();
+        }
+        for (int i = 0; i < records.size(); i++) {
+            long id = ids.get(i);
+            Segment target = targets.get(i);
+            target.writeIndexEntry(entryNumbers[i], id, offsets[i]);
+            long previous = index.put(id, location(target.id, entryNumbers[i]));
+            if (previous != ItemIdIndex.MISSING) {
+                // an item stored again replaces its former record
+                Segment old = segments.get(segmentId(previous));
+                old.markDeleted(entryNumber(previous));
+                touched.add(old);
+            }
+        }
+        for (Segment segment : touched) {
+            segment.index.force();
+        }
+        removeEmptySegments();
+    }
+
+    private void deleteAll(Collection<Long> keys, boolean compact) {
+        Set<Segment> touched = new LinkedHashSet<Segment>();
+        for (Long key : keys) {
+            long location = index.remove(key);
+            if (location != ItemIdIndex.MISSING) {
+                Segment segment = segments.get(segmentId(location));
+                segment.markDeleted(entryNumber(location));
+                touched.add(segment);
+            }
+        }
+        for (Segment segment : touched) {
+            segment.index.force();
+        }
+        removeEmptySegments();
+        if (compact) {
+            compact();
+        }
+    }
+
+    /**
+     * Copies the items of mostly deleted segments to the current segment and
+     * removes the old segments. A crash in between leaves an item in both
+     * segments, and recovery keeps the copy in the newer one.
+     */
+    private void compact() {
+        List<Long> ids = new ArrayList<Long>();
+        List<byte[]> records = new ArrayList<byte[]>();
+        List<Segment> compacted = new ArrayList<Segment>();
+        for (Segment segment : segments.values()) {
+            if (segment != current && segment.live * 4 < segment.entries) {
+                for (int entry = 0; entry < segment.entries; entry++) {
+                    if (segment.isLive(entry)) {
+                        ids.add(segment.idOf(entry));
+                        records.add(segment.read(entry));
+                    }
+                }
+                compacted.add(segment);
+            }
+        }
+        if (compacted.isEmpty()) {
+            return;
+        }
+        // appending moves the index to the copies and leaves the old segments empty
+        append(ids, records);
+        for (Segment segment : compacted) {
+            if (segments.containsKey(segment.id)) {
+                segments.remove(segment.id).delete();
+            }
+        }
+    }
+
+    private void removeEmptySegments() {
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment != current && segment.live == 0) {
+                iterator.remove();
+                segment.delete();
+            }
+        }
+    }
+
+    private void recover() {
+        File[] files = directory.listFiles();
+        TreeMap<Integer, File> indexFiles = new TreeMap<Integer, File>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith("segment-") && name.endsWith(".index")) {
+                    indexFiles.put(Integer.parseInt(name.substring(8, name.length() - 6)), file);
+                }
+            }
+        }
+        for (int segmentId : indexFiles.keySet()) {
+            Segment segment = openSegment(segmentId);
+            segments.put(segmentId, segment);
+            for (int entry = 0; entry < segment.entries; entry++) {
+                if (segment.isLive(entry)) {
+                    long previous = index.put(segment.idOf(entry), location(segmentId, entry));
+                    if (previous != ItemIdIndex.MISSING) {
+                        // left behind by an interrupted compaction
+                        segments.get(segmentId(previous)).markDeleted(entryNumber(previous));
+                    }
+                }
+            }
+        }
+        current = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        removeEmptySegments();
+    }
+
+    private Segment createSegment(int id) {
+        Segment segment = openSegment(id);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment openSegment(int id) {
+        try {
+            return new Segment(id);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open segment " + id + " in " + directory, e);
+        }
+    }
+
+    private static long location(int segmentId, int entryNumber) {
+        return (long) segmentId << 32 | entryNumber;
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int entryNumber(long location) {
+        return (int) location;
+    }
+
+    private static byte[] serialize(Object item) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(item);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T deserialize(byte[] bytes) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return (T) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private final class Segment {
+
+        final int id;
+        final File dataFile;
+        final File indexFile;
+        final MappedByteBuffer data;
+        // [item id][offset + 1], negated once the item is deleted; 0 ends the entries
+        final MappedByteBuffer index;
+        private final RandomAccessFile dataRaf;
+        private final RandomAccessFile indexRaf;
+        int entries;
+        int live;
+        int dataEnd;
+
+        Segment(int id) throws IOException {
+            this.id = id;
+            this.dataFile = new File(directory, String.format("segment-%d.data", id));
+            this.indexFile = new File(directory, String.format("segment-%d.index", id));
+            this.dataRaf = new RandomAccessFile(dataFile, "rw");
+            this.indexRaf = new RandomAccessFile(indexFile, "rw");
+            this.data = dataRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            this.index = indexRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) segmentEntries * INDEX_ENTRY_BYTES);
+            while (entries < segmentEntries) {
+                long offset = index.getLong(entries * INDEX_ENTRY_BYTES + 8);
+                if (offset == 0) {
+                    break;
+                }
+                if (offset > 0) {
+                    live++;
+                }
+                int recordOffset = (int) Math.abs(offset) - 1;
+                dataEnd = recordOffset + RECORD_HEADER_BYTES + data.getInt(recordOffset);
+                entries++;
+            }
+        }
+
+        boolean fits(int length) {
+            return entries < segmentEntries && dataEnd + RECORD_HEADER_BYTES + length <= segmentBytes;
+        }
+
+        /**
+         * Writes the record and reserves the next index entry for it.
+         */
+        int appendData(byte[] record) {
+            int offset = dataEnd;
+            data.putInt(offset, record.length);
+            ByteBuffer target = data.duplicate();
+            target.position(offset + RECORD_HEADER_BYTES);
+            target.put(record);
+            dataEnd += RECORD_HEADER_BYTES + record.length;
+            entries++;
+            return offset;
+        }
+
+        /**
+         * Writes the index entry reserved by {@link #appendData(byte[])}.
+         */
+        void writeIndexEntry(int entry, long itemId, int offset) {
+            index.putLong(entry * INDEX_ENTRY_BYTES, itemId);
+            index.putLong(entry * INDEX_ENTRY_BYTES + 8, offset + 1L);
+            live++;
+        }
+
+        byte[] read(int entry) {
+            int offset = (int) Math.abs(index.getLong(entry * INDEX_ENTRY_BYTES + 8)) - 1;
+            byte[] record = new byte[data.getInt(offset)];
+            ByteBuffer source = data.duplicate();
+            source.position(offset + RECORD_HEADER_BYTES);
+            source.get(record);
+            return record;
+        }
+
+        boolean isLive(int entry) {
+            return index.getLong(entry * INDEX_ENTRY_BYTES + 8) > 0;
+        }
+
+        long idOf(int entry) {
+            return index.getLong(entry * INDEX_ENTRY_BYTES);
+        }
+
+        void markDeleted(int entry) {
+            int position = entry * INDEX_ENTRY_BYTES + 8;
+            long offset = index.getLong(position);
+            if (offset > 0) {
+                index.putLong(position, -offset);
+                live--;
+            }
+        }
+
+        void close() {
+            try {
+                dataRaf.close();
+                indexRaf.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        void delete() {
+            close();
+            // the mappings are released by the garbage collector, deleting the files
+            // beforehand is fine on Linux and macOS
+            if (!indexFile.delete() || !dataFile.delete()) {
+                System.err.println("Cannot delete segment " + id + " in " + directory);
+            }
+        }
+    }
+
+    /**
+     * A read-only set view of sorted ids, without boxing them up front.
+     */
+    private static final class SortedIdSet extends AbstractSet<Long> {
+
+        private final long[] ids;
+
+        SortedIdSet(long[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            return new Iterator<Long>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < ids.length;
+                }
+
+                @Override
+                public Long next() {
+                    if (next >= ids.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return ids[next++];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Long && Arrays.binarySearch(ids, (Long) o) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
+}
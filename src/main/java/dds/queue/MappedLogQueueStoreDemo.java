@@ -0,0 +1,106 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends items to a {@link MappedLogQueueStore} in batches of 1000, as
+ * Hazelcast does when the queue exceeds its memory limit, consumes half of
+ * them and reopens the store, measuring the append rate and the recovery time.
+ * The number of items is the first argument, 10 million by default. Finally
+ * checks that a batch rejected for an oversized item neither loses the items
+ * stored after it nor any item after a restart.
+ */
+public class MappedLogQueueStoreDemo {
+
+    private static final int BATCH_SIZE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        File directory = new File(System.getProperty("java.io.tmpdir"), "mapped-log-queue-store-demo");
+        deleteRecursively(directory);
+
+        MappedLogQueueStore<Item> store = new MappedLogQueueStore<Item>(directory);
+        long start = System.nanoTime();
+        for (long id = 0; id < items; id += BATCH_SIZE) {
+            Map<Long, Item> batch = new LinkedHashMap<Long, Item>();
+            for (long i = id; i < Math.min(id + BATCH_SIZE, items); i++) {
+                batch.put(i, new Item());
+            }
+            store.storeAll(batch);
+        }
+        report("storeAll", items, System.nanoTime() - start);
+
+        // consume the first half, as polls from the head of the queue do
+        start = System.nanoTime();
+        for (long id = 0; id < items / 2; id += BATCH_SIZE) {
+            List<Long> batch = new ArrayList<Long>(BATCH_SIZE);
+            for (long i = id; i < Math.min(id + BATCH_SIZE, items / 2); i++) {
+                batch.add(i);
+            }
+            store.deleteAll(batch);
+        }
+        report("deleteAll", items / 2, System.nanoTime() - start);
+        System.out.printf("%d segments left%n", store.getSegmentCount());
+        store.close();
+
+        start = System.nanoTime();
+        store = new MappedLogQueueStore<Item>(directory);
+        Set<Long> keys = store.loadAllKeys();
+        long recoveryNanos = System.nanoTime() - start;
+        System.out.printf("recovered %,d item ids in %,d ms, the first is %d and loads as %s%n", keys.size(),
+                TimeUnit.NANOSECONDS.toMillis(recoveryNanos), keys.iterator().next(),
+                store.load(keys.iterator().next()));
+        store.close();
+        deleteRecursively(directory);
+
+        checkRestartAfterFailedBatch(new File(directory.getPath() + "-failed-batch"));
+    }
+
+    private static void checkRestartAfterFailedBatch(File directory) {
+        deleteRecursively(directory);
+        // segments of 64 KB, so an item of 100 KB is rejected
+        MappedLogQueueStore<Object> store = new MappedLogQueueStore<Object>(directory, 64 * 1024, 1024);
+        store.store(0L, "before");
+        Map<Long, Object> batch = new LinkedHashMap<Long, Object>();
+        batch.put(1L, "valid");
+        batch.put(2L, new byte[100 * 1024]);
+        try {
+            store.storeAll(batch);
+            throw new IllegalStateException("The oversized item was accepted");
+        } catch (IllegalArgumentException expected) {
+            System.out.println("rejected batch: " + expected.getMessage());
+        }
+        store.store(3L, "after");
+        store.close();
+
+        store = new MappedLogQueueStore<Object>(directory, 64 * 1024, 1024);
+        Set<Long> keys = store.loadAllKeys();
+        if (!keys.equals(new HashSet<Long>(Arrays.asList(0L, 3L))) || !"after".equals(store.load(3L))) {
+            throw new IllegalStateException("Recovered " + keys + " instead of [0, 3]");
+        }
+        System.out.printf("after a rejected batch and a restart, items %s are recovered%n", keys);
+        store.close();
+        deleteRecursively(directory);
+    }
+
+    private static void report(String name, int items, long nanos) {
+        System.out.printf("%-9s: %,d items in %,d ms (%,.0f items/sec)%n", name, items,
+                TimeUnit.NANOSECONDS.toMillis(nanos), items * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
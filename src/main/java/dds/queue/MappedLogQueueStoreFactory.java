@@ -0,0 +1,24 @@
+import com.hazelcast.collection.QueueStore;
+import com.hazelcast.collection.QueueStoreFactory;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Creates a {@link MappedLogQueueStore} per queue, in a subdirectory named
+ * after the queue of the {@code directory} property. The optional
+ * {@code segment-bytes} and {@code segment-entries} properties size the
+ * segments.
+ *
+ * @param <T> the item type
+ */
+public class MappedLogQueueStoreFactory<T> implements QueueStoreFactory<T> {
+
+    @Override
+    public QueueStore<T> newQueueStore(String name, Properties properties) {
+        File directory = new File(properties.getProperty("directory", "queue-store"), name);
+        int segmentBytes = Integer.parseInt(properties.getProperty("segment-bytes", "67108864"));
+        int segmentEntries = Integer.parseInt(properties.getProperty("segment-entries", "1048576"));
+        return new MappedLogQueueStore<T>(directory, segmentBytes, segmentEntries);
+    }
+}
@@ -11,10 +11,14 @@ public class QueueConfiguration {
                 .setMaxSize(0)
                 .setStatisticsEnabled(true)
                 .setQuorumName("quorumname");
+        // keeps the values of at most 10000 items in memory and pages the others
+        // in from the store 500 at a time as the consumers drain the queue
         queueConfig.getQueueStoreConfig()
                 .setEnabled(true)
                 .setClassName("com.hazelcast.QueueStoreImpl")
-                .setProperty("binary", "false");
+                .setProperty("binary", "false")
+                .setProperty("memory-limit", "10000")
+                .setProperty("bulk-load", "500");
         config.addQueueConfig(queueConfig);
         //end::queueconf[]
     }
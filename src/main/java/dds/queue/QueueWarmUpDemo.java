@@ -0,0 +1,61 @@
+import com.hazelcast.collection.IQueue;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.QueueStoreConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a member on a queue store which already holds a million items and
+ * shows that only the item ids are loaded on startup, while the values are
+ * paged in by {@code bulk-load} items as the queue is drained.
+ */
+public class QueueWarmUpDemo {
+
+    private static final int ITEMS = 1000000;
+
+    public static void main(String[] args) {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "queue-warm-up-demo");
+        MappedLogQueueStore<Item> populator = new MappedLogQueueStore<Item>(new File(directory, "orders"));
+        if (populator.loadAllKeys().isEmpty()) {
+            for (long id = 0; id < ITEMS; id += 1000) {
+                Map<Long, Item> batch = new LinkedHashMap<Long, Item>();
+                for (long i = id; i < id + 1000; i++) {
+                    batch.put(i, new Item());
+                }
+                populator.storeAll(batch);
+            }
+        }
+        populator.close();
+
+        //tag::warmup[]
+        ResidencyTrackingQueueStoreFactory<Item> storeFactory
+                = new ResidencyTrackingQueueStoreFactory<Item>(new MappedLogQueueStoreFactory<Item>());
+        Config config = new Config();
+        config.getQueueConfig("orders").setQueueStoreConfig(new QueueStoreConfig()
+                .setEnabled(true)
+                .setFactoryImplementation(storeFactory)
+                .setProperty("directory", directory.getPath())
+                .setProperty("memory-limit", "10000")
+                .setProperty("bulk-load", "500"));
+        HazelcastInstance instance = Hazelcast.newHazelcastInstance(config);
+
+        long start = System.nanoTime();
+        IQueue<Item> queue = instance.getQueue("orders");
+        System.out.printf("%,d items in the queue after %,d ms: %s%n", queue.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), storeFactory.getStore("orders"));
+
+        for (int i = 0; i < 10000; i++) {
+            queue.poll();
+        }
+        System.out.printf("%,d items in the queue after 10,000 polls: %s%n", queue.size(),
+                storeFactory.getStore("orders"));
+        //end::warmup[]
+
+        instance.shutdown();
+    }
+}
@@ -0,0 +1,141 @@
+import com.hazelcast.collection.QueueStore;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A decorator for any {@link QueueStore} which tells how many of the queue's
+ * items have their values in memory and how many only in the store.
+ * <p>
+ * With a queue store, Hazelcast keeps the value of an offered item in memory
+ * only while the queue holds fewer than {@code memory-limit} items, and on
+ * startup it loads only the item ids with {@code loadAllKeys}. The values of
+ * the other items are paged in by {@code loadAll} calls of {@code bulk-load}
+ * ids when they reach the head of the queue. This decorator follows the same
+ * rules to count the resident items; it keeps the ids of the resident items
+ * only, which are at most about {@code memory-limit + bulk-load}.
+ *
+ * @param <T> the item type
+ */
+public class ResidencyTrackingQueueStore<T> implements QueueStore<T> {
+
+    private final QueueStore<T> delegate;
+    private final int memoryLimit;
+    private final Set<Long> resident = new HashSet<Long>();
+    private long persisted;
+    private long pageLoads;
+    private long pagedInItems;
+
+    public ResidencyTrackingQueueStore(QueueStore<T> delegate, int memoryLimit) {
+        this.delegate = delegate;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * @return the number of items in the store
+     */
+    public synchronized long getPersistedItems() {
+        return persisted;
+    }
+
+    /**
+     * @return the number of items whose values are in memory
+     */
+    public synchronized int getResidentItems() {
+        return resident.size();
+    }
+
+    /**
+     * @return the number of {@code load} and {@code loadAll} calls
+     */
+    public synchronized long getPageLoads() {
+        return pageLoads;
+    }
+
+    /**
+     * @return the number of item values loaded from the store
+     */
+    public synchronized long getPagedInItems() {
+        return pagedInItems;
+    }
+
+    @Override
+    public synchronized void store(Long key, T value) {
+        delegate.store(key, value);
+        offered(key);
+    }
+
+    @Override
+    public synchronized void storeAll(Map<Long, T> map) {
+        delegate.storeAll(map);
+        for (Long key : map.keySet()) {
+            offered(key);
+        }
+    }
+
+    @Override
+    public synchronized void delete(Long key) {
+        delegate.delete(key);
+        removed(key);
+    }
+
+    @Override
+    public synchronized void deleteAll(Collection<Long> keys) {
+        delegate.deleteAll(keys);
+        for (Long key : keys) {
+            removed(key);
+        }
+    }
+
+    @Override
+    public synchronized T load(Long key) {
+        T value = delegate.load(key);
+        pageLoads++;
+        if (value != null && resident.add(key)) {
+            pagedInItems++;
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized Map<Long, T> loadAll(Collection<Long> keys) {
+        Map<Long, T> values = delegate.loadAll(keys);
+        pageLoads++;
+        for (Long key : values.keySet()) {
+            if (resident.add(key)) {
+                pagedInItems++;
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public synchronized Set<Long> loadAllKeys() {
+        Set<Long> keys = delegate.loadAllKeys();
+        // on startup, Hazelcast creates the items without their values
+        persisted = keys == null ? 0 : keys.size();
+        resident.clear();
+        return keys;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ResidencyTrackingQueueStore{persisted=%d, resident=%d, pageLoads=%d, pagedInItems=%d}",
+                persisted, resident.size(), pageLoads, pagedInItems);
+    }
+
+    private void offered(Long key) {
+        // the queue size before the offer, as Hazelcast compares it
+        if (persisted < memoryLimit) {
+            resident.add(key);
+        }
+        persisted++;
+    }
+
+    private void removed(Long key) {
+        resident.remove(key);
+        persisted--;
+    }
+}
@@ -0,0 +1,43 @@
+import com.hazelcast.collection.QueueStore;
+import com.hazelcast.collection.QueueStoreFactory;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Wraps the queue stores of another factory into
+ * {@link ResidencyTrackingQueueStore}s, using the {@code memory-limit}
+ * property of the queue store configuration, and keeps them by queue name.
+ *
+ * @param <T> the item type
+ */
+public class ResidencyTrackingQueueStoreFactory<T> implements QueueStoreFactory<T> {
+
+    // Hazelcast's default of the memory-limit property
+    private static final String DEFAULT_MEMORY_LIMIT = "1000";
+
+    private final QueueStoreFactory<T> delegate;
+    private final ConcurrentMap<String, ResidencyTrackingQueueStore<T>> stores
+            = new ConcurrentHashMap<String, ResidencyTrackingQueueStore<T>>();
+
+    public ResidencyTrackingQueueStoreFactory(QueueStoreFactory<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public QueueStore<T> newQueueStore(String name, Properties properties) {
+        int memoryLimit = Integer.parseInt(properties.getProperty("memory-limit", DEFAULT_MEMORY_LIMIT));
+        ResidencyTrackingQueueStore<T> store = new ResidencyTrackingQueueStore<T>(
+                delegate.newQueueStore(name, properties), memoryLimit);
+        stores.put(name, store);
+        return store;
+    }
+
+    /**
+     * @return the store of the queue, or {@code null} if the queue has not been created yet
+     */
+    public ResidencyTrackingQueueStore<T> getStore(String queueName) {
+        return stores.get(queueName);
+    }
+}
@@ -0,0 +1,415 @@
+import com.hazelcast.ringbuffer.RingbufferStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link RingbufferStore} which keeps the items in memory-mapped files in a
+ * local directory, so that a ringbuffer can serve old sequences and resume
+ * after a restart without an external database.
+ * <p>
+ * The items are appended to data segment files as {@code [length][kind][bytes]}
+ * records, where {@code kind} tells raw {@code byte[]} items of the
+ * {@code BINARY} in-memory format from serialized objects. {@code storeAll}
+ * writes the records of the batch as one contiguous block. A fixed-width index
+ * maps each sequence to the location of its record: the entry of sequence
+ * {@code s} is the {@code s % indexEntries}-th entry of index segment
+ * {@code s / indexEntries}, so {@code load} needs no search. A small header
+ * keeps the largest sequence and the end of the data, which is all that has
+ * to be read on startup.
+ * <p>
+ * With {@code sync}, each write forces the data, then the index and then the
+ * header to disk, so a sequence is only visible once its record is durable.
+ * Without it, the operating system writes the pages back when it sees fit,
+ * which survives a crash of the JVM but not of the machine. An instance must
+ * not be shared by several ringbuffers; see {@link MappedRingbufferStoreFactory}.
+ * <p>
+ * With {@code retainedItems}, only the last {@code retainedItems} sequences
+ * are kept, e.g. the capacity of the ringbuffer, or more to serve older
+ * sequences from the store. After each write, the data and index segments
+ * which hold only older sequences are unmapped and deleted, so the disk
+ * space, file descriptors and mapped address space stay bounded under
+ * sustained appends. Java has no public way to unmap a file; if the JDK does
+ * not offer {@code Unsafe.invokeCleaner}, the mapping is released when the
+ * buffer is garbage collected. Without {@code retainedItems}, all sequences
+ * are kept.
+ *
+ * @param <T> the item type, {@code byte[]} or serializable
+ */
+public class MappedRingbufferStore<T> implements RingbufferStore<T>, Closeable {
+
+    private static final int LENGTH_BYTES = 4;
+    private static final byte RAW = 0;
+    private static final byte SERIALIZED = 1;
+    private static final int HEADER_LARGEST_SEQUENCE = 0;
+    private static final int HEADER_DATA_SEGMENT = 8;
+    private static final int HEADER_DATA_END = 12;
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            // before Java 9, the mappings are released by the garbage collector
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int indexEntries;
+    private final boolean sync;
+    private final long retainedItems;
+    private final Map<Integer, Mapping> dataSegments = new HashMap<Integer, Mapping>();
+    private final Map<Long, Mapping> indexSegments = new HashMap<Long, Mapping>();
+    private final Mapping header;
+    private int dataSegment;
+    private int dataEnd;
+    private long largestSequence;
+    // the oldest segments which have not been deleted
+    private int firstDataSegment;
+    private long firstIndexSegment;
+
+    public MappedRingbufferStore(File directory) {
+        this(directory, 256 * 1024 * 1024, 1024 * 1024, true);
+    }
+
+    public MappedRingbufferStore(File directory, int segmentBytes, int indexEntries, boolean sync) {
+        this(directory, segmentBytes, indexEntries, sync, 0);
+    }
+
+    /**
+     * @param segmentBytes  the size of a data segment, which is also the maximum item size
+     * @param indexEntries  the number of sequences per index segment
+     * @param retainedItems the number of most recent sequences to keep, {@code 0} keeps all
+     */
+    public MappedRingbufferStore(File directory, int segmentBytes, int indexEntries, boolean sync,
+                                 long retainedItems) {
+        if (retainedItems < 0) {
+            throw new IllegalArgumentException("retainedItems must not be negative: " + retainedItems);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.indexEntries = indexEntries;
+        this.sync = sync;
+        this.retainedItems = retainedItems;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the directory " + directory);
+        }
+        File headerFile = new File(directory, "header");
+        boolean created = !headerFile.exists();
+        this.header = map(headerFile, 16);
+        if (created) {
+            header.buffer.putLong(HEADER_LARGEST_SEQUENCE, -1);
+        }
+        this.largestSequence = header.buffer.getLong(HEADER_LARGEST_SEQUENCE);
+        this.dataSegment = header.buffer.getInt(HEADER_DATA_SEGMENT);
+        this.dataEnd = header.buffer.getInt(HEADER_DATA_END);
+        this.firstDataSegment = (int) firstSegment("data-", dataSegment);
+        this.firstIndexSegment = firstSegment("index-", Math.max(0, largestSequence) / indexEntries);
+    }
+
+    @Override
+    public synchronized void store(long sequence, T data) {
+        write(sequence, new byte[][]{serialize(data)});
+    }
+
+    @Override
+    public synchronized void storeAll(long firstItemSequence, T[] items) {
+        byte[][] records = new byte[items.length][];
+        for (int i = 0; i < items.length; i++) {
+            records[i] = serialize(items[i]);
+        }
+        write(firstItemSequence, records);
+    }
+
+    @Override
+    public synchronized T load(long sequence) {
+        if (sequence < oldestRetainedSequence() || sequence > largestSequence) {
+            return null;
+        }
+        Mapping index = indexSegment(sequence / indexEntries, false);
+        if (index == null) {
+            return null;
+        }
+        long location = index.buffer.getLong((int) (sequence % indexEntries) * 8);
+        if (location == 0) {
+            return null;
+        }
+        location--;
+        int segment = (int) (location >>> 32);
+        if (segment < firstDataSegment) {
+            return null;
+        }
+        ByteBuffer data = dataSegment(segment).buffer.duplicate();
+        data.position((int) location);
+        byte[] bytes = new byte[data.getInt()];
+        byte kind = data.get();
+        data.get(bytes);
+        return deserialize(kind, bytes);
+    }
+
+    /**
+     * Reads the largest sequence from the header, without scanning the data.
+     */
+    @Override
+    public synchronized long getLargestSequence() {
+        return largestSequence;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Mapping mapping : dataSegments.values()) {
+            mapping.close();
+        }
+        for (Mapping mapping : indexSegments.values()) {
+            mapping.close();
+        }
+        dataSegments.clear();
+        indexSegments.clear();
+        header.close();
+    }
+
+    private void write(long firstSequence, byte[][] records) {
+        long[] locations = new long[records.length];
+        int blockStart = dataEnd;
+        for (int i = 0; i < records.length; i++) {
+            // the kind byte is the first byte of the serialized record
+            byte[] record = records[i];
+            int size = LENGTH_BYTES + record.length;
+            if (size > segmentBytes) {
+                throw new IllegalArgumentException("Item " + (firstSequence + i) + " of " + record.length
+                        + " bytes does not fit into a segment of " + segmentBytes + " bytes");
+            }
+            if (dataEnd + size > segmentBytes) {
+                // the rest of the batch goes into a new segment, as a new block
+                forceData(blockStart);
+                dataSegment++;
+                dataEnd = 0;
+                blockStart = 0;
+            }
+            ByteBuffer data = dataSegment(dataSegment).buffer.duplicate();
+            data.position(dataEnd);
+            data.putInt(record.length - 1);
+            data.put(record);
+            locations[i] = ((long) dataSegment << 32 | dataEnd) + 1;
+            dataEnd += size;
+        }
+        forceData(blockStart);
+
+        long lastIndexSegment = -1;
+        Mapping index = null;
+        for (int i = 0; i < records.length; i++) {
+            long sequence = firstSequence + i;
+            long indexSegment = sequence / indexEntries;
+            if (indexSegment != lastIndexSegment) {
+                if (index != null && sync) {
+                    index.buffer.force();
+                }
+                index = indexSegment(indexSegment, true);
+                lastIndexSegment = indexSegment;
+            }
+            index.buffer.putLong((int) (sequence % indexEntries) * 8, locations[i]);
+        }
+        if (index != null && sync) {
+            index.buffer.force();
+        }
+
+        largestSequence = Math.max(largestSequence, firstSequence + records.length - 1);
+        header.buffer.putInt(HEADER_DATA_SEGMENT, dataSegment);
+        header.buffer.putInt(HEADER_DATA_END, dataEnd);
+        header.buffer.putLong(HEADER_LARGEST_SEQUENCE, largestSequence);
+        if (sync) {
+            header.buffer.force();
+        }
+        if (retainedItems > 0) {
+            deleteExpiredSegments();
+        }
+    }
+
+    /**
+     * @return the oldest sequence which is kept
+     */
+    private long oldestRetainedSequence() {
+        return retainedItems > 0 ? Math.max(0, largestSequence - retainedItems + 1) : 0;
+    }
+
+    /**
+     * Deletes the segments which hold only sequences older than the retained ones.
+     */
+    private void deleteExpiredSegments() {
+        long oldest = oldestRetainedSequence();
+        long oldestIndexSegment = oldest / indexEntries;
+        // the records are appended in sequence order, so the older segments hold older records only
+        Mapping index = indexSegment(oldestIndexSegment, false);
+        long location = index == null ? 0 : index.buffer.getLong((int) (oldest % indexEntries) * 8);
+        if (location != 0) {
+            int oldestDataSegment = (int) ((location - 1) >>> 32);
+            for (; firstDataSegment < oldestDataSegment; firstDataSegment++) {
+                delete(dataSegments.remove(firstDataSegment), "data-" + firstDataSegment);
+            }
+        }
+        for (; firstIndexSegment < oldestIndexSegment; firstIndexSegment++) {
+            delete(indexSegments.remove(firstIndexSegment), "index-" + firstIndexSegment);
+        }
+    }
+
+    private void delete(Mapping mapping, String fileName) {
+        if (mapping != null) {
+            mapping.close();
+            unmap(mapping.buffer);
+        }
+        File file = new File(directory, fileName);
+        if (file.exists() && !file.delete()) {
+            throw new RuntimeException("Cannot delete " + file);
+        }
+    }
+
+    /**
+     * @return the lowest number of the segment files with the prefix, the given one if there are none
+     */
+    private long firstSegment(String prefix, long none) {
+        long first = Long.MAX_VALUE;
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(prefix)) {
+                    first = Math.min(first, Long.parseLong(name.substring(prefix.length())));
+                }
+            }
+        }
+        return first == Long.MAX_VALUE ? none : first;
+    }
+
+    private void forceData(int blockStart) {
+        if (sync && dataEnd > blockStart) {
+            dataSegment(dataSegment).buffer.force();
+        }
+    }
+
+    private Mapping dataSegment(int segment) {
+        Mapping mapping = dataSegments.get(segment);
+        if (mapping == null) {
+            mapping = map(new File(directory, "data-" + segment), segmentBytes);
+            dataSegments.put(segment, mapping);
+        }
+        return mapping;
+    }
+
+    private Mapping indexSegment(long segment, boolean create) {
+        Mapping mapping = indexSegments.get(segment);
+        if (mapping == null) {
+            File file = new File(directory, "index-" + segment);
+            if (!create && !file.exists()) {
+                return null;
+            }
+            mapping = map(file, indexEntries * 8L);
+            indexSegments.put(segment, mapping);
+        }
+        return mapping;
+    }
+
+    private Mapping map(File file, long size) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            return new Mapping(raf, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot map " + file, e);
+        }
+    }
+
+    /**
+     * Releases the mapping right away if the JDK allows it; the buffer must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (Exception e) {
+            // left to the garbage collector
+        }
+    }
+
+    /**
+     * @return the kind byte followed by the bytes of the item
+     */
+    private static byte[] serialize(Object item) {
+        if (item instanceof byte[]) {
+            byte[] raw = (byte[]) item;
+            byte[] record = new byte[raw.length + 1];
+            record[0] = RAW;
+            System.arraycopy(raw, 0, record, 1, raw.length);
+            return record;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(SERIALIZED);
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(item);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T deserialize(byte kind, byte[] bytes) {
+        if (kind == RAW) {
+            return (T) bytes;
+        }
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return (T) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class Mapping {
+        final RandomAccessFile file;
+        final MappedByteBuffer buffer;
+
+        Mapping(RandomAccessFile file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        void close() {
+            try {
+                file.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
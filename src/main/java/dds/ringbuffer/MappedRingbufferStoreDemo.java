@@ -0,0 +1,86 @@
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the sustained append rate of {@link MappedRingbufferStore} for
+ * 100-byte items of the {@code BINARY} in-memory format, by batch size and
+ * with and without forcing each write to disk, keeping the last million
+ * items as a ringbuffer of that capacity would, and the segment files left
+ * on disk. Then measures the rate of random loads of the kept items and the
+ * time to reopen the store.
+ */
+public class MappedRingbufferStoreDemo {
+
+    private static final int ITEM_BYTES = 100;
+    private static final long RUN_NANOS = TimeUnit.SECONDS.toNanos(3);
+    private static final long RETAINED_ITEMS = 1000000;
+
+    public static void main(String[] args) {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "mapped-ringbuffer-store-demo");
+        for (boolean sync : new boolean[]{false, true}) {
+            for (int batchSize : new int[]{1, 10, 100, 1000}) {
+                deleteRecursively(directory);
+                MappedRingbufferStore<byte[]> store = new MappedRingbufferStore<byte[]>(directory,
+                        64 * 1024 * 1024, 1024 * 1024, sync, RETAINED_ITEMS);
+                long appended = append(store, batchSize);
+                store.close();
+                File[] files = directory.listFiles();
+                long bytes = 0;
+                for (File file : files) {
+                    bytes += file.length();
+                }
+                System.out.printf("sync=%-5s batch %4d: %,12.0f items/sec, %,d items appended, "
+                                + "%d files of %,d MB left%n", sync, batchSize,
+                        appended * (double) TimeUnit.SECONDS.toNanos(1) / RUN_NANOS, appended, files.length,
+                        bytes / (1024 * 1024));
+            }
+        }
+
+        long start = System.nanoTime();
+        MappedRingbufferStore<byte[]> store = new MappedRingbufferStore<byte[]>(directory,
+                64 * 1024 * 1024, 1024 * 1024, false, RETAINED_ITEMS);
+        long largestSequence = store.getLargestSequence();
+        System.out.printf("reopened in %,d us, largest sequence %,d%n",
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), largestSequence);
+
+        Random random = new Random();
+        int loads = 1000000;
+        start = System.nanoTime();
+        for (int i = 0; i < loads; i++) {
+            long sequence = largestSequence - (long) (random.nextDouble() * RETAINED_ITEMS);
+            if (store.load(sequence)[0] != (byte) sequence) {
+                throw new IllegalStateException("wrong item for sequence " + sequence);
+            }
+        }
+        System.out.printf("random loads: %,12.0f loads/sec%n",
+                loads * (double) TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start));
+        store.close();
+        deleteRecursively(directory);
+    }
+
+    private static long append(MappedRingbufferStore<byte[]> store, int batchSize) {
+        long sequence = 0;
+        long end = System.nanoTime() + RUN_NANOS;
+        while (System.nanoTime() < end) {
+            byte[][] batch = new byte[batchSize][];
+            for (int i = 0; i < batchSize; i++) {
+                batch[i] = new byte[ITEM_BYTES];
+                batch[i][0] = (byte) (sequence + i);
+            }
+            store.storeAll(sequence, batch);
+            sequence += batchSize;
+        }
+        return sequence;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,28 @@
+import com.hazelcast.ringbuffer.RingbufferStore;
+import com.hazelcast.ringbuffer.RingbufferStoreFactory;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Creates a {@link MappedRingbufferStore} per ringbuffer, in a subdirectory
+ * named after the ringbuffer of the {@code directory} property. The optional
+ * {@code segment-bytes}, {@code index-entries}, {@code sync} and
+ * {@code retained-items} properties are passed on to the store. Set
+ * {@code retained-items} to at least the capacity of the ringbuffer, the
+ * factory cannot see it.
+ *
+ * @param <T> the item type
+ */
+public class MappedRingbufferStoreFactory<T> implements RingbufferStoreFactory<T> {
+
+    @Override
+    public RingbufferStore<T> newRingbufferStore(String name, Properties properties) {
+        File directory = new File(properties.getProperty("directory", "ringbuffer-store"), name);
+        int segmentBytes = Integer.parseInt(properties.getProperty("segment-bytes", "268435456"));
+        int indexEntries = Integer.parseInt(properties.getProperty("index-entries", "1048576"));
+        boolean sync = Boolean.parseBoolean(properties.getProperty("sync", "true"));
+        long retainedItems = Long.parseLong(properties.getProperty("retained-items", "0"));
+        return new MappedRingbufferStore<T>(directory, segmentBytes, indexEntries, sync, retainedItems);
+    }
+}
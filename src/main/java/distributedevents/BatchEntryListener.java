@@ -0,0 +1,18 @@
+import com.hazelcast.core.EntryEvent;
+
+import java.util.List;
+
+/**
+ * Receives the entry events of a map in batches, see {@link BatchingEntryListener}.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public interface BatchEntryListener<K, V> {
+
+    /**
+     * Called with the events of one partition, in the order they occurred.
+     * The calls for a partition never overlap.
+     */
+    void entriesChanged(int partitionId, List<EntryEvent<K, V>> events);
+}
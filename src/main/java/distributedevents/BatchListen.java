@@ -0,0 +1,152 @@
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Puts 200,000 increasing values into 1,000 keys and hands the events to a
+ * downstream system which takes 20 microseconds per call: once per event with
+ * an ordinary entry listener, and once per batch with a
+ * {@link BatchingEntryListener}, keeping all events or only the latest per key.
+ * Checks that the events of each key arrive in order.
+ */
+public class BatchListen {
+
+    private static final int UPDATES = 200000;
+    private static final int KEYS = 1000;
+    private static final long DOWNSTREAM_CALL_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    public static void main(String[] args) throws Exception {
+        HazelcastInstance hz = Hazelcast.newHazelcastInstance();
+        try {
+            runPerEvent(hz.<Integer, Integer>getMap("per-event"));
+            runBatched(hz, hz.<Integer, Integer>getMap("batched"), false);
+            runBatched(hz, hz.<Integer, Integer>getMap("batched-latest"), true);
+        } finally {
+            hz.shutdown();
+        }
+    }
+
+    private static void runPerEvent(IMap<Integer, Integer> map) throws InterruptedException {
+        final Downstream downstream = new Downstream();
+        map.addEntryListener(new PerEventListener(downstream), true);
+        long start = System.nanoTime();
+        update(map);
+        downstream.awaitLatest();
+        downstream.report("per event", start);
+    }
+
+    private static void runBatched(HazelcastInstance hz, IMap<Integer, Integer> map, boolean latestPerKey)
+            throws InterruptedException {
+        final Downstream downstream = new Downstream();
+        //tag::batchlisten[]
+        // batches of up to 500 events, delivered at least every 200 milliseconds by 4 threads,
+        // blocking the event thread while a partition holds 5000 events
+        BatchingEntryListener<Integer, Integer> listener = new BatchingEntryListener<Integer, Integer>(hz,
+                new BatchEntryListener<Integer, Integer>() {
+                    @Override
+                    public void entriesChanged(int partitionId, List<EntryEvent<Integer, Integer>> events) {
+                        downstream.write(events);
+                    }
+                }, 500, 5000, 200, latestPerKey, 4);
+        UUID registration = map.addEntryListener(listener, true);
+        //end::batchlisten[]
+        long start = System.nanoTime();
+        update(map);
+        downstream.awaitLatest();
+        downstream.report(latestPerKey ? "batched, latest per key" : "batched", start);
+        System.out.printf("%-24s: %,d events waited for a full buffer%n", "", listener.getBackpressureWaits());
+        map.removeEntryListener(registration);
+        listener.close();
+    }
+
+    /**
+     * Sets the value of key {@code i % KEYS} to {@code i}, so the values of a key increase.
+     */
+    private static void update(IMap<Integer, Integer> map) {
+        for (int i = 0; i < UPDATES; i++) {
+            map.set(i % KEYS, i);
+        }
+    }
+
+    private static class PerEventListener
+            implements EntryAddedListener<Integer, Integer>, EntryUpdatedListener<Integer, Integer> {
+
+        private final Downstream downstream;
+
+        PerEventListener(Downstream downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void entryAdded(EntryEvent<Integer, Integer> event) {
+            downstream.write(event);
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<Integer, Integer> event) {
+            downstream.write(event);
+        }
+    }
+
+    /**
+     * Simulates a system the events are written to, with a fixed cost per call.
+     */
+    private static class Downstream {
+
+        private final ConcurrentMap<Integer, Integer> latest = new ConcurrentHashMap<Integer, Integer>();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong events = new AtomicLong();
+        private final AtomicLong outOfOrder = new AtomicLong();
+
+        void write(EntryEvent<Integer, Integer> event) {
+            LockSupport.parkNanos(DOWNSTREAM_CALL_NANOS);
+            calls.incrementAndGet();
+            apply(event);
+        }
+
+        void write(List<EntryEvent<Integer, Integer>> batch) {
+            LockSupport.parkNanos(DOWNSTREAM_CALL_NANOS);
+            calls.incrementAndGet();
+            for (EntryEvent<Integer, Integer> event : batch) {
+                apply(event);
+            }
+        }
+
+        /**
+         * Waits until the last value of every key has arrived.
+         */
+        void awaitLatest() throws InterruptedException {
+            for (int i = UPDATES - KEYS; i < UPDATES; i++) {
+                Integer value;
+                while ((value = latest.get(i % KEYS)) == null || value != i) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+
+        void report(String name, long startNanos) {
+            System.out.printf("%-24s: %,6d ms, %,7d events in %,7d downstream calls, %d out of order%n", name,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), events.get(), calls.get(),
+                    outOfOrder.get());
+        }
+
+        private void apply(EntryEvent<Integer, Integer> event) {
+            events.incrementAndGet();
+            Integer previous = latest.put(event.getKey(), event.getValue());
+            if (previous != null && previous > event.getValue()) {
+                outOfOrder.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryLoadedListener;
+import com.hazelcast.map.listener.EntryMergedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.partition.PartitionService;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An entry listener which collects the events of a map per partition and
+ * hands them to a {@link BatchEntryListener} in batches: when a partition has
+ * {@code maxBatchSize} events or every {@code maxDelayMillis}, whichever
+ * comes first.
+ * <p>
+ * Hazelcast still calls this listener once per event, but it only appends
+ * the event to the partition's buffer, and the work of the application,
+ * such as a write to another system, is done once per batch. The batches are
+ * delivered by {@code deliveryThreads} threads, each serving a fixed share of
+ * the partitions, so the events of a key, which all belong to one partition,
+ * are delivered in order. With {@code latestPerKey}, a batch holds only the
+ * latest event of each key, so a key updated many times within the window is
+ * delivered once; the events of a batch are then ordered by their latest
+ * occurrence. The kept event is the latest event as Hazelcast fired it, so
+ * its {@code getOldValue()} is the value before the last update, not the
+ * value before the batch.
+ * <p>
+ * A partition buffers at most {@code maxPendingEvents} events. When the
+ * target is slower than the events arrive and the buffer is full, the event
+ * thread adding to it blocks until the partition's delivery thread has taken
+ * the buffered events, so no event is lost in the buffer. Hazelcast's own
+ * event queue then fills up, and once it is full, Hazelcast drops events and
+ * logs a warning, as it does for any slow listener. With {@code latestPerKey},
+ * an event of a key which is already buffered replaces the buffered one and
+ * never blocks. {@link #getBackpressureWaits()} counts the blocked events.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BatchingEntryListener<K, V> implements EntryAddedListener<K, V>, EntryUpdatedListener<K, V>,
+        EntryRemovedListener<K, V>, EntryEvictedListener<K, V>, EntryExpiredListener<K, V>,
+        EntryLoadedListener<K, V>, EntryMergedListener<K, V>, Closeable {
+
+    private static final ILogger LOGGER = Logger.getLogger(BatchingEntryListener.class);
+
+    private final BatchEntryListener<K, V> target;
+    private final PartitionService partitionService;
+    private final int maxBatchSize;
+    private final int maxPendingEvents;
+    private final boolean latestPerKey;
+    private final List<PartitionBuffer> buffers;
+    private final ScheduledExecutorService[] deliveryThreads;
+    private final AtomicLong backpressureWaits = new AtomicLong();
+
+    public BatchingEntryListener(HazelcastInstance hazelcastInstance, BatchEntryListener<K, V> target,
+                                 int maxBatchSize, int maxPendingEvents, long maxDelayMillis, boolean latestPerKey,
+                                 int deliveryThreads) {
+        if (maxBatchSize < 1 || maxDelayMillis < 1 || deliveryThreads < 1 || maxPendingEvents < maxBatchSize) {
+            throw new IllegalArgumentException("maxBatchSize, maxDelayMillis and deliveryThreads must be positive "
+                    + "and maxPendingEvents must not be smaller than maxBatchSize");
+        }
+        this.target = target;
+        this.partitionService = hazelcastInstance.getPartitionService();
+        this.maxBatchSize = maxBatchSize;
+        this.maxPendingEvents = maxPendingEvents;
+        this.latestPerKey = latestPerKey;
+        int partitionCount = partitionService.getPartitions().size();
+        this.buffers = new ArrayList<PartitionBuffer>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            buffers.add(new PartitionBuffer(i));
+        }
+        this.deliveryThreads = new ScheduledExecutorService[deliveryThreads];
+        for (int i = 0; i < deliveryThreads; i++) {
+            final int stripe = i;
+            this.deliveryThreads[i] = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "batching-entry-listener-" + stripe);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.deliveryThreads[i].scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    deliverStripe(stripe);
+                }
+            }, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void entryAdded(EntryEvent<K, V> event) {
+        add(event);
+    }
+
+    @Override
+    public void entryUpdated(EntryEvent<K, V> event) {
+        add(event);
+    }
+
+    @Override
+    public void entryRemoved(EntryEvent<K, V> event) {
+        add(event);
+    }
+
+    @Override
+    public void entryEvicted(EntryEvent<K, V> event) {
+        add(event);
+    }
+
+    @Override
+    public void entryExpired(EntryEvent<K, V> event) {
+        add(event);
+    }
+
+    @Override
+    public void entryLoaded(EntryEvent<K, V> event) {
+        add(event);
+    }
+
+    @Override
+    public void entryMerged(EntryEvent<K, V> event) {
+        add(event);
+    }
+
+    /**
+     * @return how many events had to wait because the buffer of their
+     * partition was full
+     */
+    public long getBackpressureWaits() {
+        return backpressureWaits.get();
+    }
+
+    /**
+     * Delivers the buffered events and stops the delivery threads. Remove the
+     * listener from the map first.
+     */
+    @Override
+    public void close() {
+        for (ScheduledExecutorService deliveryThread : deliveryThreads) {
+            deliveryThread.shutdown();
+        }
+        for (ScheduledExecutorService deliveryThread : deliveryThreads) {
+            try {
+                deliveryThread.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        for (PartitionBuffer buffer : buffers) {
+            buffer.deliver();
+        }
+    }
+
+    private void add(EntryEvent<K, V> event) {
+        final PartitionBuffer buffer = buffers.get(partitionService.getPartition(event.getKey()).getPartitionId());
+        if (buffer.add(event)) {
+            // deliver on the partition's delivery thread, so its batches stay in order
+            deliveryThreads[buffer.partitionId % deliveryThreads.length].execute(new Runnable() {
+                @Override
+                public void run() {
+                    buffer.deliver();
+                }
+            });
+        }
+    }
+
+    private void deliverStripe(int stripe) {
+        for (int partitionId = stripe; partitionId < buffers.size(); partitionId += deliveryThreads.length) {
+            buffers.get(partitionId).deliver();
+        }
+    }
+
+    private final class PartitionBuffer {
+
+        final int partitionId;
+        // guarded by this
+        private List<EntryEvent<K, V>> events = new ArrayList<EntryEvent<K, V>>();
+        private LinkedHashMap<K, EntryEvent<K, V>> latest = new LinkedHashMap<K, EntryEvent<K, V>>();
+        private boolean deliveryScheduled;
+
+        PartitionBuffer(int partitionId) {
+            this.partitionId = partitionId;
+        }
+
+        /**
+         * @return {@code true} if the batch is full and its delivery has to be scheduled
+         */
+        synchronized boolean add(EntryEvent<K, V> event) {
+            if (size() >= maxPendingEvents && !(latestPerKey && latest.containsKey(event.getKey()))) {
+                // the buffer holds at least a full batch, so its delivery is already scheduled
+                backpressureWaits.incrementAndGet();
+                do {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                } while (size() >= maxPendingEvents);
+            }
+            int size;
+            if (latestPerKey) {
+                // remove first, so the key moves to the position of its latest event
+                latest.remove(event.getKey());
+                latest.put(event.getKey(), event);
+                size = latest.size();
+            } else {
+                events.add(event);
+                size = events.size();
+            }
+            if (size >= maxBatchSize && !deliveryScheduled) {
+                deliveryScheduled = true;
+                return true;
+            }
+            return false;
+        }
+
+        // guarded by this
+        private int size() {
+            return latestPerKey ? latest.size() : events.size();
+        }
+
+        /**
+         * Called by the partition's delivery thread, or by {@link #close()}
+         * after the delivery threads have stopped.
+         */
+        void deliver() {
+            List<EntryEvent<K, V>> batch;
+            synchronized (this) {
+                deliveryScheduled = false;
+                if (latestPerKey) {
+                    if (latest.isEmpty()) {
+                        return;
+                    }
+                    batch = new ArrayList<EntryEvent<K, V>>(latest.values());
+                    latest = new LinkedHashMap<K, EntryEvent<K, V>>();
+                } else {
+                    if (events.isEmpty()) {
+                        return;
+                    }
+                    batch = events;
+                    events = new ArrayList<EntryEvent<K, V>>();
+                }
+                // wake up the event threads waiting for space
+                notifyAll();
+            }
+            try {
+                target.entriesChanged(partitionId, batch);
+            } catch (RuntimeException e) {
+                // keep delivering the other batches
+                LOGGER.warning("Delivering " + batch.size() + " events of partition " + partitionId + " failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import com.hazelcast.aggregation.Aggregator;
+import com.hazelcast.aggregation.Aggregators;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Averages the salaries of 200,000 {@link FAEmployee}s on one member with the
+ * deserializing anonymous aggregator of {@link SimpleFastAggregationsDemo}
+ * and with {@code Aggregators.integerAvg}, which reads only the salary of the
+ * {@code Portable} employees, computes their {@link NumericStatisticsAggregator
+ * statistics}, and prints the time per aggregation and the bytes allocated per entry by
+ * all threads of the JVM. Each aggregator is warmed up first. Runs once on a
+ * map in {@code BINARY} and once on a map in {@code OBJECT} in-memory format.
+ */
+public class AttributeAggregationBenchmark {
+
+    private static final int EMPLOYEES = 200000;
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) {
+        Config config = new Config();
+        config.getSerializationConfig().addPortableFactory(FAEmployee.FACTORY_ID, new FAEmployeeFactory());
+        config.getMapConfig("object-employees").setInMemoryFormat(InMemoryFormat.OBJECT);
+        HazelcastInstance hz = Hazelcast.newHazelcastInstance(config);
+        try {
+            for (String mapName : new String[]{"employees", "object-employees"}) {
+                IMap<Integer, FAEmployee> employees = hz.getMap(mapName);
+                System.out.println(mapName + ", in-memory format "
+                        + config.getMapConfig(mapName).getInMemoryFormat());
+                fill(hz, employees);
+                run("anonymous, deserializing", employees, new DeserializingAverage());
+                run("Aggregators.integerAvg", employees,
+                        Aggregators.<Map.Entry<Integer, FAEmployee>>integerAvg("salaryPerMonth"));
+                run("NumericStatistics", employees, new SalaryStatistics());
+            }
+        } finally {
+            Hazelcast.shutdownAll();
+        }
+    }
+
+    private static void run(String name, IMap<Integer, FAEmployee> employees,
+                            Aggregator<Map.Entry<Integer, FAEmployee>, ?> aggregator) {
+        Object result = null;
+        for (int i = 0; i < WARMUP; i++) {
+            result = employees.aggregate(aggregator);
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            result = employees.aggregate(aggregator);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.printf("%-26s: %7.2f ms/op, %6.1f bytes/entry, %s%n", name,
+                elapsed / 1e6 / ITERATIONS, (double) allocated / ITERATIONS / EMPLOYEES, result);
+    }
+
+    /**
+     * @return the bytes allocated so far by the live threads of this JVM
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    private static void fill(HazelcastInstance hz, IMap<Integer, FAEmployee> employees) {
+        Random random = new Random(42);
+        BulkMapWriter<Integer, FAEmployee> writer = new BulkMapWriter<Integer, FAEmployee>(hz, employees, 1000, 4);
+        for (int i = 0; i < EMPLOYEES; i++) {
+            FAEmployee employee = new FAEmployee();
+            employee.setCompanyName("Hazelcast");
+            employee.setFirstName("First " + i);
+            employee.setLastName("Last " + i);
+            employee.setSalaryPerMonth(2800 + random.nextInt(2000));
+            writer.put(i, employee);
+        }
+        writer.close();
+    }
+
+    /**
+     * The aggregator of {@link SimpleFastAggregationsDemo}.
+     */
+    private static class DeserializingAverage implements Aggregator<Map.Entry<Integer, FAEmployee>, Double> {
+
+        protected long sum;
+        protected long count;
+
+        @Override
+        public void accumulate(Map.Entry<Integer, FAEmployee> entry) {
+            count++;
+            sum += entry.getValue().getSalaryPerMonth();
+        }
+
+        @Override
+        public void combine(Aggregator aggregator) {
+            this.sum += this.getClass().cast(aggregator).sum;
+            this.count += this.getClass().cast(aggregator).count;
+        }
+
+        @Override
+        public Double aggregate() {
+            if (count == 0) {
+                return null;
+            }
+            return ((double) sum / (double) count);
+        }
+    }
+
+    private static class SalaryStatistics extends NumericStatisticsAggregator<Integer, FAEmployee> {
+
+        @Override
+        protected double valueOf(FAEmployee employee) {
+            return employee.getSalaryPerMonth();
+        }
+    }
+}
@@ -1,6 +1,19 @@
-import java.io.Serializable;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableReader;
+import com.hazelcast.nio.serialization.PortableWriter;
 
-public class FAEmployee implements Serializable {
+import java.io.IOException;
+
+/**
+ * A {@code Portable} employee, so aggregations and queries can read single
+ * attributes such as {@code salaryPerMonth} from the serialized value without
+ * deserializing the whole object. Register {@link FAEmployeeFactory} under
+ * {@link #FACTORY_ID}.
+ */
+public class FAEmployee implements Portable {
+
+    public static final int FACTORY_ID = 1223;
+    public static final int CLASS_ID = 1;
 
     private String firstName;
     private String lastName;
@@ -42,6 +55,32 @@ public class FAEmployee implements Serializable {
         this.companyName = companyName;
     }
 
+    @Override
+    public int getFactoryId() {
+        return FACTORY_ID;
+    }
+
+    @Override
+    public int getClassId() {
+        return CLASS_ID;
+    }
+
+    @Override
+    public void writePortable(PortableWriter writer) throws IOException {
+        writer.writeUTF("firstName", firstName);
+        writer.writeUTF("lastName", lastName);
+        writer.writeInt("salaryPerMonth", salaryPerMonth);
+        writer.writeUTF("companyName", companyName);
+    }
+
+    @Override
+    public void readPortable(PortableReader reader) throws IOException {
+        firstName = reader.readUTF("firstName");
+        lastName = reader.readUTF("lastName");
+        salaryPerMonth = reader.readInt("salaryPerMonth");
+        companyName = reader.readUTF("companyName");
+    }
+
     @Override
     public String toString() {
         return companyName + " - " + firstName + " " + lastName + ": " + salaryPerMonth;
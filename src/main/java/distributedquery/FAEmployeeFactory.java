@@ -0,0 +1,13 @@
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableFactory;
+
+public class FAEmployeeFactory implements PortableFactory {
+
+    @Override
+    public Portable create(int classId) {
+        if (classId == FAEmployee.CLASS_ID) {
+            return new FAEmployee();
+        }
+        return null;
+    }
+}
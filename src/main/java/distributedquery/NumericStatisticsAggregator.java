@@ -0,0 +1,127 @@
+import com.hazelcast.aggregation.Aggregator;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Aggregates the count, mean, population variance, standard deviation,
+ * minimum and maximum of a numeric value of the entries in one pass.
+ * {@code com.hazelcast.aggregation.Aggregators} has no variance or standard
+ * deviation, and needs one pass per result for the others.
+ * <p>
+ * The state is kept in primitive fields: the variance is computed with
+ * Welford's algorithm per partition and combined with the parallel formula of
+ * Chan et al., so large sums do not cancel out. Results are combined by
+ * reading the fields of the other aggregator directly.
+ * <p>
+ * Subclasses read the value with {@link #valueOf}. Hazelcast 4.0 has no public
+ * API to read a single attribute of a serialized value, so the entry value is
+ * deserialized in {@code BINARY} in-memory format; in {@code OBJECT} format it
+ * is the stored object, which is the fast case.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public abstract class NumericStatisticsAggregator<K, V>
+        implements Aggregator<Map.Entry<K, V>, NumericStatisticsAggregator.Statistics> {
+
+    private long count;
+    private double mean;
+    // sum of the squared deviations from the mean
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @return the value to aggregate
+     */
+    protected abstract double valueOf(V value);
+
+    @Override
+    public void accumulate(Map.Entry<K, V> entry) {
+        double v = valueOf(entry.getValue());
+        count++;
+        double delta = v - mean;
+        mean += delta / count;
+        m2 += delta * (v - mean);
+        if (v < min) {
+            min = v;
+        }
+        if (v > max) {
+            max = v;
+        }
+    }
+
+    @Override
+    public void combine(Aggregator aggregator) {
+        NumericStatisticsAggregator other = (NumericStatisticsAggregator) aggregator;
+        if (other.count == 0) {
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        mean += delta * other.count / total;
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return the statistics, or {@code null} if there were no entries
+     */
+    @Override
+    public Statistics aggregate() {
+        return count == 0 ? null : new Statistics(count, mean, m2 / count, min, max);
+    }
+
+    public static final class Statistics implements Serializable {
+
+        private final long count;
+        private final double mean;
+        private final double variance;
+        private final double min;
+        private final double max;
+
+        Statistics(long count, double mean, double variance, double min, double max) {
+            this.count = count;
+            this.mean = mean;
+            this.variance = variance;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * @return the population variance
+         */
+        public double getVariance() {
+            return variance;
+        }
+
+        public double getStandardDeviation() {
+            return Math.sqrt(variance);
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count %d, mean %.4f, standard deviation %.4f, min %s, max %s",
+                    count, mean, getStandardDeviation(), min, max);
+        }
+    }
+}
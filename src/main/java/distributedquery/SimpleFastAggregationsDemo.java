@@ -1,4 +1,6 @@
 import com.hazelcast.aggregation.Aggregator;
+import com.hazelcast.aggregation.Aggregators;
+import com.hazelcast.config.Config;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.map.IMap;
@@ -17,22 +19,30 @@ public class SimpleFastAggregationsDemo {
 
     public static void main(String[] args) {
         // build Hazelcast cluster
+        Config config = new Config();
+        config.getSerializationConfig().addPortableFactory(FAEmployee.FACTORY_ID, new FAEmployeeFactory());
         System.out.println("Starting instance 1");
-        Hazelcast.newHazelcastInstance();
+        Hazelcast.newHazelcastInstance(config);
         System.out.println("Starting instance 2");
-        Hazelcast.newHazelcastInstance();
+        Hazelcast.newHazelcastInstance(config);
         System.out.println("Starting instance 3");
-        HazelcastInstance hz = Hazelcast.newHazelcastInstance();
+        HazelcastInstance hz = Hazelcast.newHazelcastInstance(config);
 
         // retrieve the Hazelcast IMap
         IMap<String, FAEmployee> employees = hz.getMap("employees");
 
         // fill in demo data
-        fillEmployeeMap(employees);
+        fillEmployeeMap(hz, employees);
 
         // we simple calculate a average over all salaries on all employees
         simpleCustomAverageAggregation(employees);
 
+        // the same and more with the built-in aggregators, reading only the salary from the serialized employees
+        attributeAggregations(employees);
+
+        // the variance and standard deviation, which the built-in aggregators lack
+        salaryStatistics(employees);
+
         Hazelcast.shutdownAll();
     }
     //tag::fademo[]
@@ -71,8 +81,35 @@ public class SimpleFastAggregationsDemo {
         System.out.println("\n");
     }
     //end::fademo[]
-    private static void fillEmployeeMap(IMap<String, FAEmployee> employees) {
+    //tag::faprimitive[]
+    private static void attributeAggregations(IMap<String, FAEmployee> employees) {
+        Long count = employees.aggregate(Aggregators.<Map.Entry<String, FAEmployee>>count("salaryPerMonth"));
+        Double avgSalary = employees.aggregate(Aggregators.<Map.Entry<String, FAEmployee>>integerAvg("salaryPerMonth"));
+        Integer minSalary = employees.aggregate(Aggregators.<Map.Entry<String, FAEmployee>>integerMin("salaryPerMonth"));
+        Integer maxSalary = employees.aggregate(Aggregators.<Map.Entry<String, FAEmployee>>integerMax("salaryPerMonth"));
+
+        // the average, minimum and maximum are null if the map is empty
+        System.out.printf("%d salaries, average %s, min %s, max %s%n", count, avgSalary, minSalary, maxSalary);
+    }
+    //end::faprimitive[]
+    //tag::fastatistics[]
+    private static void salaryStatistics(IMap<String, FAEmployee> employees) {
+        NumericStatisticsAggregator.Statistics statistics = employees.aggregate(
+                new NumericStatisticsAggregator<String, FAEmployee>() {
+                    @Override
+                    protected double valueOf(FAEmployee employee) {
+                        return employee.getSalaryPerMonth();
+                    }
+                });
+
+        // null if the map is empty
+        System.out.println("Salaries: " + statistics);
+    }
+    //end::fastatistics[]
+    private static void fillEmployeeMap(HazelcastInstance hz, IMap<String, FAEmployee> employees) {
         Random random = new Random();
+        // batches of 1000 entries per member, at most 4 batches in flight
+        BulkMapWriter<String, FAEmployee> writer = new BulkMapWriter<String, FAEmployee>(hz, employees, 1000, 4);
         for (int i = 0; i < 10000; i++) {
             String companyName = COMPANIES[random.nextInt(COMPANIES.length)];
             String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
@@ -86,9 +123,10 @@ public class SimpleFastAggregationsDemo {
             employee.setSalaryPerMonth(salaryPerMonth);
 
             String key = UUID.randomUUID().toString();
-            employees.put(key, employee);
+            writer.put(key, employee);
 
         }
-        System.out.println("Employee map filled.");
+        writer.close();
+        System.out.println("Employee map filled: " + writer);
     }
 }
\ No newline at end of file
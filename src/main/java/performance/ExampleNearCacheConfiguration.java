@@ -1,5 +1,9 @@
+import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.client.config.ClientConfig;
 import com.hazelcast.config.*;
 import com.hazelcast.config.EvictionConfig.MaxSizePolicy;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
 
 public class ExampleNearCacheConfiguration {
 
@@ -28,5 +32,28 @@ public class ExampleNearCacheConfiguration {
                 .setLocalUpdatePolicy(NearCacheConfig.LocalUpdatePolicy.CACHE_ON_UPDATE)
                 .setPreloaderConfig(preloaderConfig);
      //end::nearcacheconfig[]
+
+        //tag::nearcachetinylfu[]
+        TinyLfuAdmission admission = new TinyLfuAdmission(10000);
+
+        EvictionConfig tinyLfuEvictionConfig = new EvictionConfig()
+                .setMaximumSizePolicy(MaxSizePolicy.ENTRY_COUNT)
+                .setComparator(new TinyLfuNearCacheComparator(admission))
+                .setSize( 10000 );
+
+        NearCacheConfig tinyLfuNearCacheConfig = new NearCacheConfig()
+                .setName("hotData")
+                .setSerializeKeys(false)
+                .setEvictionConfig(tinyLfuEvictionConfig);
+
+        HazelcastInstance client = HazelcastClient.newHazelcastClient(
+                new ClientConfig().addNearCacheConfig(tinyLfuNearCacheConfig));
+        IMap<String, String> hotData = client.getMap("hotData");
+
+        // record every read, the Near Cache misses too, or the comparator falls back to LRU order
+        String key = "customer-42";
+        admission.recordAccess(key);
+        String value = hotData.get(key);
+        //end::nearcachetinylfu[]
     }
 }
\ No newline at end of file
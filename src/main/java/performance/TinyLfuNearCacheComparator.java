@@ -0,0 +1,26 @@
+import com.hazelcast.spi.eviction.EvictableEntryView;
+import com.hazelcast.spi.eviction.EvictionPolicyComparator;
+
+/**
+ * Evicts the sampled Near Cache entry whose key has been accessed least often
+ * recently, according to a {@code TinyLfuAdmission}. Configure it per Near
+ * Cache with {@code EvictionConfig.setComparator}.
+ * <p>
+ * The keys of the entries are the keys the accesses are recorded with only if
+ * the Near Cache does not serialize its keys.
+ */
+public class TinyLfuNearCacheComparator
+        implements EvictionPolicyComparator<Object, Object, EvictableEntryView<Object, Object>> {
+
+    private final TinyLfuAdmission admission;
+
+    public TinyLfuNearCacheComparator(TinyLfuAdmission admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public int compare(EvictableEntryView<Object, Object> entry1, EvictableEntryView<Object, Object> entry2) {
+        return admission.compare(entry1.getKey(), entry1.getLastAccessTime(),
+                entry2.getKey(), entry2.getLastAccessTime());
+    }
+}